@@ -23,105 +23,471 @@
 
 package com.asimihsan.handytrowel.cli;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.TimeoutException;
 
-import org.xml.sax.InputSource;
+import javax.management.JMException;
+
 import org.xml.sax.SAXException;
 
 import de.l3s.boilerpipe.BoilerpipeProcessingException;
-import de.l3s.boilerpipe.document.TextDocument;
-import de.l3s.boilerpipe.extractors.ArticleExtractor;
-import de.l3s.boilerpipe.sax.BoilerpipeSAXInput;
-import de.l3s.boilerpipe.sax.HTMLDocument;
 
-import com.asimihsan.handytrowel.extraction.LinkExtractor;
+import com.asimihsan.handytrowel.crawl.Crawler.CrawlerBuilder;
+import com.asimihsan.handytrowel.crawl.Frontier;
+import com.asimihsan.handytrowel.graph.LinkGraph;
+import com.asimihsan.handytrowel.graph.LinkGraphSink.LinkGraphSinkBuilder;
+import com.asimihsan.handytrowel.index.ArticleSearcher;
+import com.asimihsan.handytrowel.index.LuceneIndexSink.LuceneIndexSinkBuilder;
+import com.asimihsan.handytrowel.index.SearchHit;
+import com.asimihsan.handytrowel.network.AdaptiveTimeouts;
+import com.asimihsan.handytrowel.network.AdaptiveTimeouts.AdaptiveTimeoutsBuilder;
+import com.asimihsan.handytrowel.network.CompletionStrategy;
 import com.asimihsan.handytrowel.network.HTMLFetcher;
 import com.asimihsan.handytrowel.network.HTMLFetcher.HTMLFetcherBuilder;
-import com.asimihsan.handytrowel.nlp.TextAnalyzer;
-import com.asimihsan.handytrowel.nlp.TextAnalyzer.TextAnalyzerBuilder;
+import com.asimihsan.handytrowel.network.ResourceFilter;
+import com.asimihsan.handytrowel.network.ResourceFilter.ResourceFilterBuilder;
+import com.asimihsan.handytrowel.nlp.DocumentFrequencyStore;
+import com.asimihsan.handytrowel.nlp.DocumentFrequencyStore.DocumentFrequencyStoreBuilder;
+import com.asimihsan.handytrowel.nlp.LanguageIdentifier;
+import com.asimihsan.handytrowel.nlp.Languages;
+import com.asimihsan.handytrowel.nlp.TokenNormalizer.TokenNormalizerBuilder;
+import com.asimihsan.handytrowel.output.JsonSink;
+import com.asimihsan.handytrowel.pipeline.ArticlePipeline;
+import com.asimihsan.handytrowel.pipeline.ArticlePipeline.ArticlePipelineBuilder;
+import com.asimihsan.handytrowel.pipeline.BatchRunner;
+import com.asimihsan.handytrowel.pipeline.BatchRunner.BatchRunnerBuilder;
+import com.asimihsan.handytrowel.pipeline.MemoryBudget;
+import com.asimihsan.handytrowel.pipeline.MemoryBudget.MemoryBudgetBuilder;
+import com.asimihsan.handytrowel.pipeline.RunJournal;
+import com.asimihsan.handytrowel.pipeline.RunJournal.RunJournalBuilder;
+import com.asimihsan.handytrowel.queue.WorkQueue;
+import com.asimihsan.handytrowel.queue.WorkQueue.WorkQueueBuilder;
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.base.Joiner;
+import com.google.common.base.Predicate;
+import com.google.common.base.Splitter;
 
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
 
 public class Main {
 
+    /**
+     * Replaced by the worker ID in the --df-store, --graph and --journal of
+     * a --queue worker.
+     */
+    private static final String WORKER_PLACEHOLDER = "{worker}";
+
     // Positional arguments
     @Argument private List<String> arguments = new ArrayList<>();
 
-    public static void main(String[] args) throws SAXException, CmdLineException, TimeoutException, BoilerpipeProcessingException, IOException {
+    @Option(name = "--timeout-millis",
+            usage = "How long to allow a page to load, or with adaptive timeouts, a host not yet measured")
+    private int timeoutMillis = 30 * 1000;
+
+    @Option(name = "--fixed-timeout",
+            usage = "Give every host --timeout-millis rather than adapting to its measured latency")
+    private boolean fixedTimeout = false;
+
+    @Option(name = "--timeout-floor-millis",
+            usage = "The shortest adapted timeout")
+    private int timeoutFloorMillis = 5 * 1000;
+
+    @Option(name = "--timeout-ceiling-millis",
+            usage = "The longest adapted timeout")
+    private int timeoutCeilingMillis = 60 * 1000;
+
+    @Option(name = "--retries",
+            usage = "How many more times to try a page that times out or fails")
+    private int retries = 1;
+
+    @Option(name = "--hedge",
+            usage = "Start a second attempt when a page loads slower than is typical for its host")
+    private boolean hedge = false;
+
+    @Option(name = "--max-page-bytes",
+            usage = "Truncate fetched pages to this many bytes, 0 for no limit")
+    private int maxPageBytes = 8 * 1024 * 1024;
+
+    @Option(name = "--max-body-chars",
+            usage = "Truncate extracted article bodies to this many characters, 0 for no limit")
+    private int maxBodyChars = 1024 * 1024;
+
+    @Option(name = "--max-tokens",
+            usage = "Stop analysis after this many tokens, 0 for no limit")
+    private int maxTokens = 100 * 1000;
+
+    @Option(name = "--abort-oversized",
+            usage = "Skip pages that exceed a limit instead of truncating them")
+    private boolean abortOversized = false;
+
+    @Option(name = "--no-resource-filter",
+            usage = "Let the renderer load every stylesheet, font, ad and tracker")
+    private boolean noResourceFilter = false;
+
+    @Option(name = "--block-domain", metaVar = "DOMAIN",
+            usage = "Also block requests to this domain, may be repeated")
+    private List<String> blockDomains = new ArrayList<>();
+
+    @Option(name = "--completion",
+            usage = "When to capture a rendering page: FULL_LOAD, DOM_STABLE or CONTENT_READY")
+    private CompletionStrategy completionStrategy = CompletionStrategy.FULL_LOAD;
+
+    @Option(name = "--stable-millis",
+            usage = "For DOM_STABLE, how long the DOM and network must stay quiet")
+    private int stableMillis = 1000;
+
+    @Option(name = "--min-content-chars",
+            usage = "For CONTENT_READY, how much paragraph text makes a page ready")
+    private int minContentChars = 1000;
+
+    @Option(name = "--input", metaVar = "FILE",
+            usage = "Also process the URLs in this file, one per line")
+    private File input = null;
+
+    @Option(name = "--threads",
+            usage = "How many URLs to process at once")
+    private int threads = 1;
+
+    @Option(name = "--index", metaVar = "DIR",
+            usage = "Add processed articles to the Lucene index in this directory")
+    private File indexDirectory = null;
+
+    @Option(name = "--index-threads",
+            usage = "How many threads add articles to the index")
+    private int indexThreads = 2;
+
+    @Option(name = "--commit-every",
+            usage = "Commit the index after this many articles")
+    private int commitEvery = 1000;
+
+    @Option(name = "--graph", metaVar = "DIR",
+            usage = "Add processed articles' links to the link graph in this directory")
+    private File graphDirectory = null;
+
+    @Option(name = "--graph-stats",
+            usage = "Print degree statistics of the graph given by --graph instead of processing URLs")
+    private boolean graphStats = false;
+
+    @Option(name = "--query", metaVar = "TEXT",
+            usage = "Search the index given by --index instead of processing URLs")
+    private String query = null;
+
+    @Option(name = "--query-language", metaVar = "CODE",
+            usage = "Language of --query, identified from the query if not given")
+    private String queryLanguage = null;
+
+    @Option(name = "--max-hits",
+            usage = "How many search results to print")
+    private int maxHits = 10;
+
+    @Option(name = "--keywords",
+            usage = "Output this many TF-IDF keywords per article, 0 for none")
+    private int keywords = 0;
+
+    @Option(name = "--df-store", metaVar = "FILE",
+            usage = "Accumulate document frequencies for --keywords in this file")
+    private File dfStoreFile = null;
+
+    @Option(name = "--languages", metaVar = "CODES",
+            usage = "Comma separated languages to analyze, others are output unanalyzed")
+    private String languages = Joiner.on(",").join(Languages.SUPPORTED);
+
+    @Option(name = "--no-language-id",
+            usage = "Analyze every article as English without identifying its language")
+    private boolean noLanguageId = false;
+
+    @Option(name = "--pre-scan",
+            usage = "Strip script, style, SVG and comments from pages before parsing them")
+    private boolean preScan = false;
+
+    @Option(name = "--keep-punctuation",
+            usage = "Keep punctuation tokens rather than dropping them")
+    private boolean keepPunctuation = false;
+
+    @Option(name = "--keep-numbers",
+            usage = "Keep numbers as they are rather than folding them to NUMBER")
+    private boolean keepNumbers = false;
+
+    @Option(name = "--keep-case",
+            usage = "Keep tokens' case rather than lower casing them")
+    private boolean keepCase = false;
+
+    @Option(name = "--crawl",
+            usage = "Treat the URLs as seeds and follow the links they yield")
+    private boolean crawl = false;
+
+    @Option(name = "--depth",
+            usage = "When crawling, how many links deep to follow from the seeds")
+    private int depth = 1;
+
+    @Option(name = "--allow-domain", metaVar = "DOMAIN",
+            usage = "When crawling, follow links to this domain and its subdomains (default: the seeds' hosts)")
+    private List<String> allowDomains = new ArrayList<>();
+
+    @Option(name = "--max-pages",
+            usage = "When crawling, the most pages to process")
+    private int maxPages = 1000;
+
+    @Option(name = "--frontier-memory",
+            usage = "When crawling, how many queued URLs to keep in memory before spilling to disk")
+    private int frontierMemory = 100000;
+
+    @Option(name = "--spill-dir", metaVar = "DIR",
+            usage = "When crawling, where to spill queued URLs (default: a temporary directory)")
+    private File spillDirectory = null;
+
+    @Option(name = "--journal", metaVar = "FILE",
+            usage = "Journal each URL's outcome here, and skip URLs it says are finished")
+    private File journalFile = null;
+
+    @Option(name = "--max-attempts",
+            usage = "With --journal, how many times to try a failing URL across restarts")
+    private int maxAttempts = 3;
+
+    @Option(name = "--memory-budget-mb",
+            usage = "Only start on a URL while the estimated heap used by URLs in flight leaves room for it"
+                    + " within this many MB (default: half the maximum heap)")
+    private int memoryBudgetMB = 0;
+
+    @Option(name = "--no-memory-budget",
+            usage = "Process up to --threads URLs at once however much heap they need")
+    private boolean noMemoryBudget = false;
+
+    @Option(name = "--queue", metaVar = "DIR",
+            usage = "Process shards of URLs from the work queue in this directory until it is drained;"
+                    + " any --df-store, --graph or --journal must contain {worker}, replaced by the worker ID")
+    private File queueDirectory = null;
+
+    @Option(name = "--submit",
+            usage = "Add the URLs to the --queue in shards and exit instead of processing them")
+    private boolean submit = false;
+
+    @Option(name = "--shard-size",
+            usage = "How many URLs go in each shard submitted to the queue")
+    private int shardSize = 100;
+
+    @Option(name = "--lease-millis",
+            usage = "How long a queue shard may go without a heartbeat before other workers reclaim it")
+    private long leaseMillis = 10 * 60 * 1000;
+
+    @Option(name = "--worker-id", metaVar = "ID",
+            usage = "This worker's name in the queue (default: pid@host)")
+    private String workerId = null;
+
+    public static void main(String[] args) throws SAXException, CmdLineException, TimeoutException, BoilerpipeProcessingException, IOException, InterruptedException {
         new Main().doMain(args);
     }
 
-    public void doMain(String[] args) throws SAXException, CmdLineException, TimeoutException, BoilerpipeProcessingException, IOException {
+    public void doMain(String[] args) throws SAXException, CmdLineException, TimeoutException, BoilerpipeProcessingException, IOException, InterruptedException {
         CmdLineParser parser = new CmdLineParser(this);
         parser.setUsageWidth(80);
+        List<String> urls = new ArrayList<>();
         try {
             parser.parseArgument(args);
-            if (arguments.isEmpty())
-                throw new CmdLineException(parser, "No arguments were given");
+            if (query != null) {
+                if (indexDirectory == null)
+                    throw new CmdLineException(parser, "--query needs an --index to search");
+                if (queryLanguage != null && !Languages.isSupported(queryLanguage))
+                    throw new CmdLineException(parser, "--query-language must be one of " + Languages.SUPPORTED);
+            } else if (graphStats) {
+                if (graphDirectory == null)
+                    throw new CmdLineException(parser, "--graph-stats needs a --graph to read");
+            } else {
+                urls.addAll(arguments);
+                if (input != null)
+                    urls.addAll(readUrls(input));
+                if (submit && queueDirectory == null)
+                    throw new CmdLineException(parser, "--submit needs a --queue to submit to");
+                if (urls.isEmpty() && (queueDirectory == null || submit))
+                    throw new CmdLineException(parser, "No arguments were given");
+                if (queueDirectory != null && !submit) {
+                    requirePerWorker(parser, "--df-store", dfStoreFile);
+                    requirePerWorker(parser, "--graph", graphDirectory);
+                    requirePerWorker(parser, "--journal", journalFile);
+                }
+            }
         } catch (final CmdLineException e) {
             System.err.println(e.getMessage());
-            System.err.println("handytrowel [URL]");
+            System.err.println("handytrowel [options] [URL...]");
             parser.printUsage(System.err);
             System.err.println();
             throw e;
         }
-        String url = arguments.get(0);
 
+        if (query != null) {
+            search();
+            return;
+        }
+        if (graphStats) {
+            printGraphStats();
+            return;
+        }
+
+        WorkQueue queue = null;
+        if (queueDirectory != null) {
+            WorkQueueBuilder queueBuilder = new WorkQueueBuilder()
+            .directory(queueDirectory)
+            .leaseMillis(leaseMillis);
+            if (workerId != null)
+                queueBuilder.workerId(workerId);
+            queue = queueBuilder.build();
+            if (submit) {
+                System.err.println("Submitted " + queue.submit(urls, shardSize) + " shards");
+                return;
+            }
+            dfStoreFile = perWorker(dfStoreFile, queue.getWorkerId());
+            graphDirectory = perWorker(graphDirectory, queue.getWorkerId());
+            journalFile = perWorker(journalFile, queue.getWorkerId());
+        }
+
+        ResourceFilter resourceFilter = null;
+        if (!noResourceFilter) {
+            resourceFilter = new ResourceFilterBuilder()
+            .defaults()
+            .blockDomains(blockDomains)
+            .build();
+        }
+        AdaptiveTimeouts adaptiveTimeouts = null;
+        if (!fixedTimeout) {
+            adaptiveTimeouts = new AdaptiveTimeoutsBuilder()
+            .floorMillis(timeoutFloorMillis)
+            .ceilingMillis(timeoutCeilingMillis)
+            .build();
+        }
         HTMLFetcher htmlFetcher = new HTMLFetcherBuilder()
-        .timeoutMillis(30 * 10000)
+        .timeoutMillis(timeoutMillis)
+        .adaptiveTimeouts(adaptiveTimeouts)
+        .maxRetries(retries)
+        .hedge(hedge)
+        .maxPageBytes(maxPageBytes)
+        .resourceFilter(resourceFilter)
+        .completionStrategy(completionStrategy)
+        .stableMillis(stableMillis)
+        .minContentChars(minContentChars)
         .build();
-        String pageSource = null;
-        try {
-            pageSource = htmlFetcher.getPageSource(url);
-        } catch (final TimeoutException e) {
-            e.printStackTrace();
-            throw e;
+        DocumentFrequencyStore documentFrequencies = null;
+        if (keywords > 0) {
+            documentFrequencies = new DocumentFrequencyStoreBuilder()
+            .file(dfStoreFile)
+            .build();
         }
+        ArticlePipeline pipeline = new ArticlePipelineBuilder()
+        .fetcher(htmlFetcher)
+        .maxBodyChars(maxBodyChars)
+        .maxTokens(maxTokens)
+        .abortOversized(abortOversized)
+        .documentFrequencies(documentFrequencies)
+        .keywords(keywords)
+        .languageIdentifier(noLanguageId ? null : new LanguageIdentifier())
+        .analyzedLanguages(new HashSet<>(Splitter.on(',').trimResults().omitEmptyStrings().splitToList(languages)))
+        .preScan(preScan)
+        .normalizer(new TokenNormalizerBuilder()
+                    .dropPunctuation(!keepPunctuation)
+                    .foldNumbers(!keepNumbers)
+                    .foldCase(!keepCase)
+                    .build())
+        .build();
 
-        String extractedBody = null;
-        List<String> links = null;
+        RunJournal journal = null;
+        if (journalFile != null) {
+            journal = new RunJournalBuilder()
+            .file(journalFile)
+            .maxAttempts(maxAttempts)
+            .build();
+        }
+        MemoryBudget memoryBudget = null;
+        if (!noMemoryBudget) {
+            MemoryBudgetBuilder budgetBuilder = new MemoryBudgetBuilder();
+            if (memoryBudgetMB > 0)
+                budgetBuilder.budgetBytes(memoryBudgetMB * (1L << 20));
+            memoryBudget = budgetBuilder.build();
+            try {
+                memoryBudget.register();
+            } catch (JMException e) {
+                System.err.println("Could not expose the memory budget over JMX");
+                e.printStackTrace();
+            }
+        }
+        BatchRunnerBuilder runnerBuilder = new BatchRunnerBuilder()
+        .pipeline(pipeline)
+        .journal(journal)
+        .memoryBudget(memoryBudget)
+        .threads(threads)
+        .sink(new JsonSink(System.out));
+        if (indexDirectory != null) {
+            runnerBuilder.sink(new LuceneIndexSinkBuilder()
+                               .directory(indexDirectory)
+                               .indexThreads(indexThreads)
+                               .commitEvery(commitEvery)
+                               .build());
+        }
+        if (graphDirectory != null) {
+            runnerBuilder.sink(new LinkGraphSinkBuilder()
+                               .directory(graphDirectory)
+                               .build());
+        }
+        BatchRunner runner = runnerBuilder.build();
         try {
-            final HTMLDocument htmlDoc = new HTMLDocument(pageSource);
-            final TextDocument doc = new BoilerpipeSAXInput(htmlDoc.toInputSource()).getTextDocument();
-            ArticleExtractor.INSTANCE.process(doc);
-            final InputSource is = htmlDoc.toInputSource();
-            links = LinkExtractor.INSTANCE.process(doc, is);
-            /*
-             * working article sentences extractor
-             * !!AI do I have to call this again, or can I piggy back on LinkExtractor?
-             */
-            extractedBody = ArticleExtractor.INSTANCE.getText(pageSource);
-
-        } catch (BoilerpipeProcessingException e) {
-            e.printStackTrace();
-            throw e;
+            if (queue != null) {
+                runner.run(urls);
+                drain(runner, queue);
+            } else if (crawl) {
+                crawl(runner, urls);
+            } else {
+                runner.run(urls);
+            }
+        } finally {
+            if (queue != null)
+                queue.close();
+            runner.close();
+            if (journal != null)
+                journal.close();
+            if (documentFrequencies != null)
+                documentFrequencies.close();
         }
+        if (runner.getSkipped() > 0)
+            System.err.println("Skipped " + runner.getSkipped() + " URLs already finished in the journal");
+        if (memoryBudget != null && memoryBudget.getWaits() > 0)
+            System.err.println("Memory budget held back " + memoryBudget.getWaits() + " URLs: " + memoryBudget);
+        if (runner.getFailures() > 0)
+            System.exit(1);
+    }
 
-        TextAnalyzer analyzer = new TextAnalyzerBuilder()
-        .body(extractedBody)
-        .build()
-        .analyze();
-        List<String> tokens = analyzer.getTokens();
+    /**
+     * Workers each rewrite these files as their own, so --queue workers
+     * sharing one would overwrite each other's.
+     */
+    private static void requirePerWorker(CmdLineParser parser, String option, File path) throws CmdLineException {
+        if (path != null && !path.getPath().contains(WORKER_PLACEHOLDER))
+            throw new CmdLineException(parser, option + " can't be shared by --queue workers, put "
+                                       + WORKER_PLACEHOLDER + " in it to give each worker its own");
+    }
 
+    private static File perWorker(File path, String workerId) {
+        return path == null ? null : new File(path.getPath().replace(WORKER_PLACEHOLDER, workerId));
+    }
+
+    private void search() throws IOException {
+        List<SearchHit> hits = null;
+        try (ArticleSearcher searcher = new ArticleSearcher(indexDirectory)) {
+            hits = searcher.search(query, queryLanguage, maxHits);
+        }
         ObjectMapper mapper = new ObjectMapper();
         mapper.configure(SerializationFeature.INDENT_OUTPUT, true);
-        Map<String, Object> articleData = new HashMap<>();
-        articleData.put("extractedBody", extractedBody);
-        articleData.put("links", links);
-        articleData.put("tokens", tokens);
         try {
-            mapper.writeValue(System.out, articleData);
+            mapper.writeValue(System.out, hits);
         } catch (JsonGenerationException e) {
             e.printStackTrace();
             throw e;
@@ -133,4 +499,75 @@ public class Main {
             throw e;
         }
     }
+
+    private void printGraphStats() throws IOException {
+        try (LinkGraph graph = new LinkGraph(graphDirectory)) {
+            System.out.println("nodes: " + graph.nodeCount());
+            System.out.println("edges: " + graph.edgeCount());
+            System.out.println("out-degree: " + graph.outDegreeStats());
+            System.out.println("in-degree: " + graph.inDegreeStats());
+        }
+    }
+
+    /**
+     * Claim and process shards until every shard in the queue is done,
+     * waiting for other workers' shards in case they die and need
+     * reclaiming.
+     */
+    private void drain(BatchRunner runner, WorkQueue queue) throws IOException, InterruptedException {
+        while (true) {
+            final WorkQueue.Shard shard = queue.claim();
+            if (shard == null) {
+                if (queue.isDrained())
+                    return;
+                Thread.sleep(Math.min(leaseMillis / 4, 5000));
+                continue;
+            }
+            // Once another worker takes the shard over, leave the rest to it.
+            runner.run(shard.getUrls(), new Predicate<String>() {
+                @Override
+                public boolean apply(String url) {
+                    return !shard.isLost();
+                }
+            });
+            if (!queue.complete(shard))
+                System.err.println("Lost shard " + shard.getName() + " to another worker");
+        }
+    }
+
+    private void crawl(BatchRunner runner, List<String> seeds) throws IOException, InterruptedException {
+        boolean temporary = spillDirectory == null;
+        File directory = temporary ? Files.createTempDirectory("handytrowel-frontier").toFile() : spillDirectory;
+        Frontier frontier = new Frontier(frontierMemory, directory);
+        CrawlerBuilder crawlerBuilder = new CrawlerBuilder()
+        .runner(runner)
+        .frontier(frontier)
+        .threads(threads)
+        .maxDepth(depth)
+        .maxPages(maxPages);
+        for (String domain : allowDomains)
+            crawlerBuilder.allowDomain(domain);
+        try {
+            crawlerBuilder.build().crawl(seeds);
+        } finally {
+            frontier.close();
+            if (temporary)
+                Files.deleteIfExists(directory.toPath());
+        }
+    }
+
+    /**
+     * Read a file of URLs, one per line, ignoring blank lines and lines
+     * starting with a hash.
+     */
+    private static List<String> readUrls(File file) throws IOException {
+        List<String> urls = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            urls.add(line);
+        }
+        return urls;
+    }
 }
@@ -0,0 +1,93 @@
+/** ========================================================================
+  * handytrowel: src/main/java/cli/StartupTraining.java
+  * Representative offline workload for building a class-data-sharing archive.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.cli;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.xml.sax.SAXException;
+
+import de.l3s.boilerpipe.BoilerpipeProcessingException;
+
+import com.asimihsan.handytrowel.loadtest.SyntheticSite;
+import com.asimihsan.handytrowel.loadtest.SyntheticSite.SyntheticSiteBuilder;
+import com.asimihsan.handytrowel.network.FetchedPage;
+import com.asimihsan.handytrowel.network.HTMLFetcher.HTMLFetcherBuilder;
+import com.asimihsan.handytrowel.nlp.LanguageIdentifier;
+import com.asimihsan.handytrowel.nlp.Languages;
+import com.asimihsan.handytrowel.nlp.TokenNormalizer.TokenNormalizerBuilder;
+import com.asimihsan.handytrowel.output.JsonSink;
+import com.asimihsan.handytrowel.pipeline.ArticlePipeline;
+import com.asimihsan.handytrowel.pipeline.ArticlePipeline.ArticlePipelineBuilder;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Loads the classes a one-shot {@link Main} run loads, without needing the
+ * network or PhantomJS, so the build can record them for a class-data-
+ * sharing archive. See the startupArchive task in build.gradle.
+ *
+ * It parses a typical command line, sets up a fetcher and the PhantomJS
+ * capabilities, then runs pages from a {@link SyntheticSite}, rendered in
+ * memory, through pre-scanning, extraction, language identification,
+ * analysis and JSON output. Prints how long the JVM had been up when the
+ * first article was written, and when all were.
+ *
+ * @author Asim Ihsan
+ */
+public class StartupTraining {
+
+    private static final int PAGES = 20;
+
+    public static void main(String[] args)
+    throws CmdLineException, IOException, BoilerpipeProcessingException, SAXException {
+        new CmdLineParser(new Main()).parseArgument("--threads", "4", "--timeout-millis", "30000",
+                "--pre-scan", "http://localhost/page/0");
+        new HTMLFetcherBuilder().build();
+        DesiredCapabilities.phantomjs();
+
+        ArticlePipeline pipeline = new ArticlePipelineBuilder()
+        .languageIdentifier(new LanguageIdentifier())
+        .analyzedLanguages(new HashSet<>(Languages.SUPPORTED))
+        .preScan(true)
+        .normalizer(new TokenNormalizerBuilder().build())
+        .build();
+        SyntheticSite site = new SyntheticSiteBuilder().pages(PAGES).build();
+        long firstMillis = -1;
+        try (JsonSink sink = new JsonSink(ByteStreams.nullOutputStream())) {
+            for (int page = 0; page < PAGES; page++) {
+                String url = "http://localhost/page/" + page;
+                sink.write(pipeline.process(FetchedPage.fromString(url, site.render(page))));
+                if (firstMillis < 0)
+                    firstMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+            }
+        }
+        System.err.println("First article after " + firstMillis + "ms, " + PAGES + " after "
+                           + ManagementFactory.getRuntimeMXBean().getUptime() + "ms of JVM uptime");
+    }
+
+}
@@ -0,0 +1,276 @@
+/** ========================================================================
+  * handytrowel: src/main/java/crawl/Crawler.java
+  * Breadth-first crawl outward from seed URLs within a page budget.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.crawl;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.asimihsan.handytrowel.pipeline.ArticleRecord;
+import com.asimihsan.handytrowel.pipeline.BatchRunner;
+
+/**
+ * Crawl outward from seed URLs, following the links each page yields.
+ *
+ * Pages are taken breadth first from a {@link Frontier} and processed
+ * through a {@link BatchRunner}, so every page still reaches the runner's
+ * sinks. A link is followed when it is http or https, its host is one of
+ * the allowed domains or a subdomain of one, it has not been seen before,
+ * and the page it came from is shallower than maxDepth. Seeds are depth 0.
+ * The crawl stops once maxPages pages have been started or the frontier
+ * runs dry.
+ *
+ * Pages the runner's journal says are finished are skipped before they
+ * are fetched and don't count towards maxPages. Their links aren't
+ * followed either, as the journal doesn't keep them, so rerunning a crawl
+ * with the same journal only fetches pages reachable without them.
+ *
+ * @author Asim Ihsan
+ */
+public class Crawler {
+
+    private final BatchRunner runner;
+    private final Frontier frontier;
+    private final int threads;
+
+    /**
+     * How many links deep to follow from the seeds.
+     *
+     * The default value is 1, i.e. the seeds and the pages they link to.
+     */
+    private final int maxDepth;
+
+    /**
+     * The most pages to process in the whole crawl.
+     *
+     * The default value is 1000.
+     */
+    private final int maxPages;
+
+    /**
+     * Hosts that may be crawled, lower case. If empty, the hosts of the seed
+     * URLs are used.
+     */
+    private final List<String> allowedDomains;
+
+    private final SeenUrls seen;
+    private int pagesStarted = 0;
+
+    public static class CrawlerBuilder {
+        private BatchRunner runner;
+        private Frontier frontier;
+        private int threads = 1;
+        private int maxDepth = 1;
+        private int maxPages = 1000;
+        private List<String> allowedDomains = new ArrayList<>();
+
+        public CrawlerBuilder runner(BatchRunner runner) {
+            this.runner = runner;
+            return this;
+        }
+
+        public CrawlerBuilder frontier(Frontier frontier) {
+            this.frontier = frontier;
+            return this;
+        }
+
+        public CrawlerBuilder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public CrawlerBuilder maxDepth(int maxDepth) {
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        public CrawlerBuilder maxPages(int maxPages) {
+            this.maxPages = maxPages;
+            return this;
+        }
+
+        public CrawlerBuilder allowDomain(String domain) {
+            this.allowedDomains.add(domain.toLowerCase(Locale.ROOT));
+            return this;
+        }
+
+        public Crawler build() {
+            return new Crawler(this);
+        }
+    }
+
+    private Crawler(CrawlerBuilder builder) {
+        this.runner = builder.runner;
+        this.frontier = builder.frontier;
+        this.threads = builder.threads;
+        this.maxDepth = builder.maxDepth;
+        this.maxPages = builder.maxPages;
+        this.allowedDomains = new ArrayList<>(builder.allowedDomains);
+        this.seen = new SeenUrls(Math.max(1024, maxPages * 16));
+    }
+
+    /**
+     * Crawl from the seeds, returning once the crawl is finished.
+     *
+     * @return how many pages were processed.
+     */
+    public int crawl(List<String> seeds) throws IOException, InterruptedException {
+        for (String seed : seeds) {
+            String url = normalize(null, seed);
+            if (url == null)
+                continue;
+            if (seen.add(url))
+                frontier.add(new Frontier.Entry(url, 0));
+        }
+        if (allowedDomains.isEmpty()) {
+            for (String seed : seeds) {
+                String host = hostOf(seed);
+                if (host != null && !allowedDomains.contains(host))
+                    allowedDomains.add(host);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CompletionService<CrawledPage> completion = new ExecutorCompletionService<>(executor);
+        int inFlight = 0;
+        try {
+            while (true) {
+                while (inFlight < threads && pagesStarted < maxPages && !frontier.isEmpty()) {
+                    final Frontier.Entry entry = frontier.poll();
+                    if (!runner.shouldProcess(entry.getUrl()))
+                        continue;
+                    completion.submit(new Callable<CrawledPage>() {
+                        @Override
+                        public CrawledPage call() {
+                            return new CrawledPage(entry, runner.process(entry.getUrl()));
+                        }
+                    });
+                    pagesStarted++;
+                    inFlight++;
+                }
+                if (inFlight == 0)
+                    break;
+                Future<CrawledPage> future = completion.take();
+                inFlight--;
+                try {
+                    enqueueLinks(future.get());
+                } catch (ExecutionException e) {
+                    // runner.process reports its own failures; nothing to follow.
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return pagesStarted;
+    }
+
+    private void enqueueLinks(CrawledPage page) throws IOException {
+        if (page.record == null || page.record.getLinks() == null)
+            return;
+        if (page.entry.getDepth() >= maxDepth)
+            return;
+        for (String link : page.record.getLinks()) {
+            String url = normalize(page.entry.getUrl(), link);
+            if (url == null || !isAllowed(hostOf(url)))
+                continue;
+            if (seen.add(url))
+                frontier.add(new Frontier.Entry(url, page.entry.getDepth() + 1));
+        }
+    }
+
+    /**
+     * Resolve a link against the page it appeared on and drop its fragment.
+     *
+     * @return the absolute URL, or null if it is malformed or not http(s).
+     */
+    public static String normalize(String base, String link) {
+        try {
+            URI uri = new URI(link.trim());
+            if (base != null)
+                uri = new URI(base).resolve(uri);
+            String scheme = uri.getScheme();
+            if (scheme == null || uri.getHost() == null)
+                return null;
+            scheme = scheme.toLowerCase(Locale.ROOT);
+            if (!scheme.equals("http") && !scheme.equals("https"))
+                return null;
+            // Rebuilt from the raw components: decoding and re-encoding the
+            // path and query would turn escapes like %26 and %2F into the
+            // characters they stand for, and so into a different URL.
+            StringBuilder url = new StringBuilder(scheme).append("://");
+            if (uri.getRawUserInfo() != null)
+                url.append(uri.getRawUserInfo()).append('@');
+            url.append(uri.getHost().toLowerCase(Locale.ROOT));
+            if (uri.getPort() != -1)
+                url.append(':').append(uri.getPort());
+            String path = uri.getRawPath();
+            url.append(path == null || path.isEmpty() ? "/" : path);
+            if (uri.getRawQuery() != null)
+                url.append('?').append(uri.getRawQuery());
+            return url.toString();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static String hostOf(String url) {
+        try {
+            String host = new URI(url.trim()).getHost();
+            return host == null ? null : host.toLowerCase(Locale.ROOT);
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    boolean isAllowed(String host) {
+        if (host == null)
+            return false;
+        for (String domain : allowedDomains) {
+            if (host.equals(domain) || host.endsWith("." + domain))
+                return true;
+        }
+        return false;
+    }
+
+    private static class CrawledPage {
+        private final Frontier.Entry entry;
+        private final ArticleRecord record;
+
+        CrawledPage(Frontier.Entry entry, ArticleRecord record) {
+            this.entry = entry;
+            this.record = record;
+        }
+    }
+
+}
@@ -0,0 +1,173 @@
+/** ========================================================================
+  * handytrowel: src/main/java/crawl/Frontier.java
+  * FIFO queue of URLs to crawl that spills to disk when it grows large.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.crawl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * First in, first out queue of URLs waiting to be crawled, together with
+ * their crawl depth.
+ *
+ * At most maxInMemory entries are held on the heap. Past that, newly
+ * added entries are written out in chunks to spill files in spillDirectory
+ * and read back, oldest chunk first, once the in-memory entries have been
+ * taken. Order is preserved throughout: entries in memory are always
+ * older than those in spill files, which are older than those still being
+ * collected into the next chunk.
+ *
+ * Thread-safe.
+ *
+ * @author Asim Ihsan
+ */
+public class Frontier {
+
+    public static class Entry {
+        private final String url;
+        private final int depth;
+
+        public Entry(String url, int depth) {
+            this.url = url;
+            this.depth = depth;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+    }
+
+    private final int maxInMemory;
+    private final int chunkSize;
+    private final File spillDirectory;
+
+    private final Deque<Entry> head = new ArrayDeque<>();
+    private final Deque<File> spills = new ArrayDeque<>();
+    private List<Entry> tail = new ArrayList<>();
+    private long size = 0;
+    private int spillCount = 0;
+
+    /**
+     * @param maxInMemory
+     *            the most entries to hold on the heap before spilling.
+     * @param spillDirectory
+     *            where to write spill files. It must exist.
+     */
+    public Frontier(int maxInMemory, File spillDirectory) {
+        this.maxInMemory = maxInMemory;
+        this.chunkSize = Math.max(1, maxInMemory / 4);
+        this.spillDirectory = spillDirectory;
+    }
+
+    public synchronized void add(Entry entry) throws IOException {
+        size++;
+        if (spills.isEmpty() && tail.isEmpty() && head.size() < maxInMemory) {
+            head.add(entry);
+            return;
+        }
+        tail.add(entry);
+        if (head.size() + tail.size() > maxInMemory || tail.size() >= chunkSize)
+            spill();
+    }
+
+    /**
+     * Take the oldest entry, or null if the frontier is empty.
+     */
+    public synchronized Entry poll() throws IOException {
+        if (head.isEmpty()) {
+            if (!spills.isEmpty()) {
+                unspill();
+            } else {
+                head.addAll(tail);
+                tail = new ArrayList<>();
+            }
+        }
+        Entry entry = head.poll();
+        if (entry != null)
+            size--;
+        return entry;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * How many spill files are currently on disk.
+     */
+    public synchronized int getSpilledChunks() {
+        return spills.size();
+    }
+
+    private void spill() throws IOException {
+        File file = new File(spillDirectory, String.format("frontier-%06d.txt", spillCount++));
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (Entry entry : tail) {
+                writer.write(Integer.toString(entry.depth));
+                writer.write('\t');
+                writer.write(entry.url);
+                writer.write('\n');
+            }
+        }
+        spills.add(file);
+        tail = new ArrayList<>();
+    }
+
+    private void unspill() throws IOException {
+        File file = spills.poll();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line = null;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                head.add(new Entry(line.substring(tab + 1), Integer.parseInt(line.substring(0, tab))));
+            }
+        }
+        Files.delete(file.toPath());
+    }
+
+    /**
+     * Delete any spill files left on disk.
+     */
+    public synchronized void close() throws IOException {
+        for (File file : spills)
+            Files.deleteIfExists(file.toPath());
+        spills.clear();
+    }
+
+}
@@ -0,0 +1,132 @@
+/** ========================================================================
+  * handytrowel: src/main/java/crawl/SeenUrls.java
+  * Memory-efficient set of URLs a crawl has already seen.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.crawl;
+
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * The set of URLs a crawl has already queued, without holding the URLs
+ * themselves.
+ *
+ * Each URL is reduced to a 64-bit fingerprint. A Bloom filter over the
+ * fingerprints answers the common case, a URL never seen before, without
+ * touching the exact set. Only when the filter says "maybe" is the exact
+ * set of fingerprints, a flat open addressing table of longs, consulted.
+ * That costs between 16 and 32 bytes per URL, instead of the hundred or
+ * more a String and its hash set entry would, and is exact up to 64-bit
+ * hash collisions, which are vanishingly unlikely at crawl sizes.
+ *
+ * Thread-safe.
+ *
+ * @author Asim Ihsan
+ */
+public class SeenUrls {
+
+    private static final HashFunction FINGERPRINT = Hashing.murmur3_128();
+
+    private final BloomFilter<Long> bloomFilter;
+
+    /**
+     * Open addressing table of fingerprints. Zero marks an empty slot, so a
+     * fingerprint of zero is stored as one.
+     */
+    private long[] table = new long[1024];
+    private int size = 0;
+
+    /**
+     * @param expectedUrls
+     *            how many URLs the Bloom filter is sized for. More can be
+     *            added, the filter just gets less effective.
+     */
+    public SeenUrls(int expectedUrls) {
+        this.bloomFilter = BloomFilter.create(Funnels.longFunnel(), expectedUrls, 0.01);
+    }
+
+    /**
+     * Mark the URL as seen. Returns true if it had not been seen before.
+     */
+    public synchronized boolean add(String url) {
+        long fingerprint = fingerprint(url);
+        if (bloomFilter.mightContain(fingerprint) && contains(fingerprint))
+            return false;
+        bloomFilter.put(fingerprint);
+        insert(fingerprint);
+        return true;
+    }
+
+    public synchronized boolean contains(String url) {
+        long fingerprint = fingerprint(url);
+        return bloomFilter.mightContain(fingerprint) && contains(fingerprint);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private static long fingerprint(String url) {
+        long fingerprint = FINGERPRINT.hashString(url, StandardCharsets.UTF_8).asLong();
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    private int slot(long fingerprint, int mask) {
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+
+    private boolean contains(long fingerprint) {
+        int mask = table.length - 1;
+        for (int slot = slot(fingerprint, mask); table[slot] != 0; slot = (slot + 1) & mask) {
+            if (table[slot] == fingerprint)
+                return true;
+        }
+        return false;
+    }
+
+    private void insert(long fingerprint) {
+        // Keep the table at most half full.
+        if ((size + 1) * 2 > table.length) {
+            long[] old = table;
+            table = new long[old.length * 2];
+            for (long f : old) {
+                if (f != 0)
+                    put(f);
+            }
+        }
+        put(fingerprint);
+        size++;
+    }
+
+    private void put(long fingerprint) {
+        int mask = table.length - 1;
+        int slot = slot(fingerprint, mask);
+        while (table[slot] != 0)
+            slot = (slot + 1) & mask;
+        table[slot] = fingerprint;
+    }
+
+}
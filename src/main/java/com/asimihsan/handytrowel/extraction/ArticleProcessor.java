@@ -0,0 +1,97 @@
+/** ========================================================================
+  * handytrowel: src/main/java/extraction/ArticleProcessor.java
+  * Extract the article body and in-article links from a fetched page.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.extraction;
+
+import java.util.List;
+
+import org.xml.sax.SAXException;
+
+import de.l3s.boilerpipe.BoilerpipeProcessingException;
+import de.l3s.boilerpipe.document.TextBlock;
+import de.l3s.boilerpipe.document.TextDocument;
+import de.l3s.boilerpipe.extractors.ArticleExtractor;
+import de.l3s.boilerpipe.sax.BoilerpipeSAXInput;
+
+import com.asimihsan.handytrowel.network.FetchedPage;
+
+/**
+ * Run boilerpipe's article extraction and {@link LinkExtractor} over a
+ * {@link FetchedPage}.
+ *
+ * The page is parsed exactly twice, once to build the boilerpipe
+ * {@link TextDocument} and once to find the links inside content blocks,
+ * and both passes decode directly from the page bytes. The extracted body
+ * comes from the already classified {@link TextDocument} rather than by
+ * running the extractor over the page a third time.
+ *
+ * @author Asim Ihsan
+ */
+public final class ArticleProcessor {
+    public static final ArticleProcessor INSTANCE = new ArticleProcessor();
+
+    public static ArticleProcessor getInstance() {
+        return INSTANCE;
+    }
+
+    private ArticleProcessor() {
+    }
+
+    public ExtractedArticle process(final FetchedPage page)
+    throws BoilerpipeProcessingException, SAXException {
+        return process(page, 0);
+    }
+
+    /**
+     * Process the page, keeping at most maxBodyChars characters of the
+     * extracted body. A maxBodyChars of zero or less means no limit.
+     */
+    public ExtractedArticle process(final FetchedPage page, final int maxBodyChars)
+    throws BoilerpipeProcessingException, SAXException {
+        final TextDocument doc = new BoilerpipeSAXInput(page.toInputSource()).getTextDocument();
+        ArticleExtractor.INSTANCE.process(doc);
+        final List<String> links = LinkExtractor.INSTANCE.process(doc, page.toInputSource());
+
+        // Same as TextDocument.getContent(), but stops appending content
+        // blocks as soon as the limit is reached.
+        final StringBuilder body = new StringBuilder();
+        boolean truncated = false;
+        for (TextBlock block : doc.getTextBlocks()) {
+            if (!block.isContent())
+                continue;
+            final String text = block.getText();
+            if (maxBodyChars > 0 && body.length() + text.length() > maxBodyChars) {
+                body.append(text, 0, maxBodyChars - body.length());
+                truncated = true;
+                break;
+            }
+            body.append(text);
+            // Only the separator is dropped if it doesn't fit, which loses
+            // none of the text.
+            if (maxBodyChars <= 0 || body.length() < maxBodyChars)
+                body.append('\n');
+        }
+        return new ExtractedArticle(body.toString(), links, truncated);
+    }
+
+}
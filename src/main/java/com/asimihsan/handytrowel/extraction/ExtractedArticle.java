@@ -0,0 +1,62 @@
+/** ========================================================================
+  * handytrowel: src/main/java/extraction/ExtractedArticle.java
+  * Article body and links extracted from a single page.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.extraction;
+
+import java.util.List;
+
+/**
+ * The result of running {@link ArticleProcessor} over a page.
+ *
+ * @author Asim Ihsan
+ */
+public class ExtractedArticle {
+
+    private final String body;
+    private final List<String> links;
+
+    /**
+     * True if the body was cut short because it was longer than the
+     * extraction limit.
+     */
+    private final boolean truncated;
+
+    public ExtractedArticle(String body, List<String> links, boolean truncated) {
+        this.body = body;
+        this.links = links;
+        this.truncated = truncated;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public List<String> getLinks() {
+        return links;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+}
@@ -0,0 +1,265 @@
+/** ========================================================================
+  * handytrowel: src/main/java/extraction/HTMLPreScanner.java
+  * Strip script, style, SVG and comments from raw HTML before parsing.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.extraction;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import com.asimihsan.handytrowel.network.FetchedPage;
+
+/**
+ * Remove the parts of a page that never contribute article text, in one
+ * linear scan over its raw bytes, before either NekoHTML pass sees it.
+ *
+ * The contents of script (including JSON-LD), style and svg elements are
+ * removed, and HTML comments are removed whole. The script, style and svg
+ * start and end tags themselves are kept, so the parsers still see the
+ * same element structure and boilerpipe splits text blocks exactly where
+ * it did before. Both {@link ArticleProcessor} passes parse the same
+ * stripped bytes, so the text element indexes that {@link LinkExtractor}
+ * matches against boilerpipe's content blocks stay in step.
+ *
+ * Works on any charset in which ASCII characters are single ASCII bytes,
+ * which is every charset a web page is likely to declare except UTF-16 and
+ * UTF-32; pages in those are left as they are.
+ *
+ * @author Asim Ihsan
+ */
+public final class HTMLPreScanner {
+
+    private static final byte[] COMMENT_START = ascii("<!--");
+    private static final byte[] COMMENT_END = ascii("-->");
+    private static final byte[][] RAW_TEXT_ELEMENTS = {ascii("script"), ascii("style")};
+    private static final byte[] SVG = ascii("svg");
+
+    private HTMLPreScanner() {
+    }
+
+    /**
+     * Return a copy of the page with script, style, SVG and comments
+     * stripped, recording the bytes saved with
+     * {@link FetchedPage#setStrippedBytes}. The page is returned as it is if
+     * there was nothing to strip or its charset can't be scanned bytewise.
+     */
+    public static FetchedPage strip(final FetchedPage page) {
+        if (!isAsciiCompatible(page.getCharset()))
+            return page;
+        final byte[] in = page.getContent();
+        final byte[] out = new byte[in.length];
+        final int length = strip(in, out);
+        if (length == in.length)
+            return page;
+
+        final byte[] content = new byte[length];
+        System.arraycopy(out, 0, content, 0, length);
+        final FetchedPage stripped = new FetchedPage(page.getUrl(), content, page.getCharset(), page.isTruncated());
+        stripped.setResourceStats(page.getResourceStats());
+        stripped.setCompletion(page.getCompletion());
+        stripped.setRenderMillis(page.getRenderMillis());
+        stripped.setStrippedBytes(in.length - length);
+        return stripped;
+    }
+
+    /**
+     * Copy in to out without the stripped regions.
+     *
+     * @return how many bytes were written to out.
+     */
+    static int strip(final byte[] in, final byte[] out) {
+        final int n = in.length;
+        int written = 0;
+        int i = 0;
+        // Once a comment is found to be unclosed, so is every later one;
+        // not searching again keeps the scan linear.
+        boolean unclosedComment = false;
+        while (i < n) {
+            final byte b = in[i];
+            if (b != '<') {
+                out[written++] = b;
+                i++;
+                continue;
+            }
+            if (!unclosedComment && startsWith(in, i, COMMENT_START)) {
+                final int end = indexOf(in, i + COMMENT_START.length, COMMENT_END);
+                if (end >= 0) {
+                    i = end + COMMENT_END.length;
+                    continue;
+                }
+                unclosedComment = true;
+            }
+
+            byte[] name = null;
+            for (byte[] element : RAW_TEXT_ELEMENTS) {
+                if (isStartTag(in, i, element))
+                    name = element;
+            }
+            final boolean svg = name == null && isStartTag(in, i, SVG);
+            if (name == null && !svg) {
+                out[written++] = b;
+                i++;
+                continue;
+            }
+            if (svg)
+                name = SVG;
+
+            // Keep the start tag, drop the body up to the matching end tag.
+            final int tagEnd = endOfTag(in, i);
+            if (tagEnd < 0) {
+                System.arraycopy(in, i, out, written, n - i);
+                return written + n - i;
+            }
+            System.arraycopy(in, i, out, written, tagEnd - i);
+            written += tagEnd - i;
+            if (svg && in[tagEnd - 2] == '/') {
+                i = tagEnd;
+                continue;
+            }
+            final int close = svg ? closingSvg(in, tagEnd) : closingTag(in, tagEnd, name);
+            i = close < 0 ? n : close;
+        }
+        return written;
+    }
+
+    /**
+     * Whether a start tag for the element name begins at i.
+     */
+    private static boolean isStartTag(final byte[] in, final int i, final byte[] name) {
+        final int after = i + 1 + name.length;
+        if (after >= in.length || !regionMatchesIgnoreCase(in, i + 1, name))
+            return false;
+        final byte next = in[after];
+        return next == '>' || next == '/' || isWhitespace(next);
+    }
+
+    /**
+     * The index just past the '>' ending the tag that starts at i, skipping
+     * quoted attribute values, or -1 if the tag never ends.
+     */
+    private static int endOfTag(final byte[] in, int i) {
+        byte quote = 0;
+        for (i++; i < in.length; i++) {
+            final byte b = in[i];
+            if (quote != 0) {
+                if (b == quote)
+                    quote = 0;
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The index of the first end tag for name at or after from, or -1.
+     * Script and style contents are raw text, so the first one ends them.
+     */
+    private static int closingTag(final byte[] in, final int from, final byte[] name) {
+        for (int i = from; i + 2 + name.length <= in.length; i++) {
+            if (in[i] == '<' && in[i + 1] == '/' && regionMatchesIgnoreCase(in, i + 2, name)
+                    && (i + 2 + name.length == in.length || isTagNameEnd(in[i + 2 + name.length])))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * The index of the end tag matching an svg start tag, allowing for svg
+     * elements nested inside it, or -1.
+     */
+    private static int closingSvg(final byte[] in, final int from) {
+        int depth = 1;
+        for (int i = from; i < in.length; i++) {
+            if (in[i] != '<')
+                continue;
+            if (isStartTag(in, i, SVG)) {
+                final int tagEnd = endOfTag(in, i);
+                if (tagEnd < 0)
+                    return -1;
+                if (in[tagEnd - 2] != '/')
+                    depth++;
+                i = tagEnd - 1;
+            } else if (i + 1 < in.length && in[i + 1] == '/' && i + 2 + SVG.length <= in.length
+                       && regionMatchesIgnoreCase(in, i + 2, SVG)
+                       && (i + 2 + SVG.length == in.length || isTagNameEnd(in[i + 2 + SVG.length]))) {
+                if (--depth == 0)
+                    return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isTagNameEnd(final byte b) {
+        return b == '>' || b == '/' || isWhitespace(b);
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+
+    private static boolean startsWith(final byte[] in, final int i, final byte[] prefix) {
+        if (i + prefix.length > in.length)
+            return false;
+        for (int j = 0; j < prefix.length; j++) {
+            if (in[i + j] != prefix[j])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Compare in at i with a lower case ASCII name, ignoring case.
+     */
+    private static boolean regionMatchesIgnoreCase(final byte[] in, final int i, final byte[] name) {
+        if (i + name.length > in.length)
+            return false;
+        for (int j = 0; j < name.length; j++) {
+            int b = in[i + j];
+            if (b >= 'A' && b <= 'Z')
+                b += 'a' - 'A';
+            if (b != name[j])
+                return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(final byte[] in, final int from, final byte[] target) {
+        for (int i = from; i + target.length <= in.length; i++) {
+            if (startsWith(in, i, target))
+                return i;
+        }
+        return -1;
+    }
+
+    private static boolean isAsciiCompatible(final Charset charset) {
+        final String name = charset.name();
+        return !name.regionMatches(true, 0, "UTF-16", 0, 6) && !name.regionMatches(true, 0, "UTF-32", 0, 6);
+    }
+
+    private static byte[] ascii(final String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+}
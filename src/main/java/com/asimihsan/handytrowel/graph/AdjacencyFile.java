@@ -0,0 +1,342 @@
+/** ========================================================================
+  * handytrowel: src/main/java/graph/AdjacencyFile.java
+  * Sorted, delta-compressed, memory-mapped adjacency lists.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * One direction of a link graph: for every node ID, the sorted IDs of its
+ * neighbours.
+ *
+ * The file starts with a header of magic, node count, edge count and the
+ * position of the offsets table. Then come the adjacency lists in node
+ * order, each a varint degree followed by the first neighbour and then the
+ * gaps between consecutive neighbours, also as varints; sorted lists of
+ * nearby IDs mostly take one or two bytes per edge. Last comes the offsets
+ * table, the position of each node's list as a long, plus one more for the
+ * end. Nothing needs decoding to open the file, so it is simply memory
+ * mapped, in chunks so that it may be larger than 2GB.
+ *
+ * Files are written from an edge file by external merge sort, so building
+ * one needs heap only for one run of edges, not the whole graph.
+ *
+ * @author Asim Ihsan
+ */
+final class AdjacencyFile implements Closeable {
+
+    private static final int MAGIC = 0x48544731;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8;
+
+    private final MappedFile buffer;
+    private final int nodeCount;
+    private final long edgeCount;
+    private final long offsetsPosition;
+
+    AdjacencyFile(File file) throws IOException {
+        buffer = new MappedFile(file);
+        if (buffer.size() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            buffer.close();
+            throw new IOException(file + " is not an adjacency file");
+        }
+        nodeCount = buffer.getInt(4);
+        edgeCount = buffer.getLong(8);
+        offsetsPosition = buffer.getLong(16);
+    }
+
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    long getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * How many neighbours the node has; zero for IDs past the last node
+     * with an edge.
+     */
+    int degree(int node) {
+        if (node < 0 || node >= nodeCount)
+            return 0;
+        return readVarint(new long[] {position(node)});
+    }
+
+    /**
+     * The node's neighbours in ascending order.
+     */
+    int[] neighbours(int node) {
+        if (node < 0 || node >= nodeCount)
+            return new int[0];
+        long[] cursor = {position(node)};
+        int[] neighbours = new int[readVarint(cursor)];
+        int previous = 0;
+        for (int i = 0; i < neighbours.length; i++) {
+            previous += readVarint(cursor);
+            neighbours[i] = previous;
+        }
+        return neighbours;
+    }
+
+    private long position(int node) {
+        return buffer.getLong(offsetsPosition + node * 8L);
+    }
+
+    private int readVarint(long[] cursor) {
+        int value = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = buffer.get(cursor[0]++);
+            value |= (b & 0x7f) << shift;
+            if (b >= 0)
+                return value;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.close();
+    }
+
+    /**
+     * Build an adjacency file from an edge file of (from, to) int pairs.
+     *
+     * @param reverse
+     *            if true index the edges by their to node instead, giving
+     *            in-links rather than out-links.
+     * @param runEdges
+     *            how many edges to sort in memory at once.
+     * @return how many distinct edges were written.
+     */
+    static long write(File edges, boolean reverse, int nodeCount, File output, int runEdges) throws IOException {
+        File directory = output.getAbsoluteFile().getParentFile();
+        File partial = new File(output.getPath() + ".tmp");
+        List<File> runs = new ArrayList<>();
+        try {
+            writeRuns(edges, reverse, runEdges, directory, runs);
+            long written = merge(runs, nodeCount, partial);
+            // Renamed into place so that open mappings keep the old file.
+            Files.move(partial.toPath(), output.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return written;
+        } finally {
+            for (File run : runs)
+                Files.deleteIfExists(run.toPath());
+            Files.deleteIfExists(partial.toPath());
+        }
+    }
+
+    private static void writeRuns(File edges, boolean reverse, int runEdges, File directory, List<File> runs)
+    throws IOException {
+        long[] run = new long[Math.max(1, runEdges)];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(edges), 1 << 16))) {
+            boolean more = true;
+            while (more) {
+                int count = 0;
+                try {
+                    while (count < run.length) {
+                        long from = in.readInt();
+                        long to = in.readInt();
+                        run[count] = reverse ? (to << 32) | from : (from << 32) | to;
+                        count++;
+                    }
+                } catch (EOFException e) {
+                    more = false;
+                }
+                if (count == 0)
+                    break;
+                Arrays.sort(run, 0, count);
+                File file = File.createTempFile("adjacency-run", ".tmp", directory);
+                runs.add(file);
+                try (DataOutputStream out = new DataOutputStream(
+                            new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+                    for (int i = 0; i < count; i++)
+                        out.writeLong(run[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * A sorted run being merged, positioned at its smallest unmerged edge.
+     */
+    private static final class Run implements Comparable<Run> {
+        private final DataInputStream in;
+        private long head;
+
+        Run(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        }
+
+        boolean advance() throws IOException {
+            try {
+                head = in.readLong();
+                return true;
+            } catch (EOFException e) {
+                in.close();
+                return false;
+            }
+        }
+
+        @Override
+        public int compareTo(Run other) {
+            return Long.compare(head, other.head);
+        }
+    }
+
+    private static long merge(List<File> runFiles, int nodeCount, File output) throws IOException {
+        PriorityQueue<Run> queue = new PriorityQueue<>(Math.max(1, runFiles.size()));
+        File offsetsFile = new File(output.getPath() + ".offsets.tmp");
+        long edgeCount = 0;
+        try {
+            for (File file : runFiles) {
+                Run run = new Run(file);
+                if (run.advance())
+                    queue.add(run);
+            }
+            long dataEnd;
+            try (CountingOutputStream data = new CountingOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(output), 1 << 16));
+                 DataOutputStream offsets = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(offsetsFile), 1 << 16))) {
+                data.write(new byte[HEADER_BYTES]);
+                int node = 0;
+                int[] neighbours = new int[16];
+                while (!queue.isEmpty()) {
+                    int from = (int) (queue.peek().head >>> 32);
+                    int degree = 0;
+                    while (!queue.isEmpty() && (int) (queue.peek().head >>> 32) == from) {
+                        Run run = queue.poll();
+                        int to = (int) run.head;
+                        if (to != from && (degree == 0 || neighbours[degree - 1] != to)) {
+                            if (degree == neighbours.length)
+                                neighbours = Arrays.copyOf(neighbours, degree * 2);
+                            neighbours[degree++] = to;
+                        }
+                        if (run.advance())
+                            queue.add(run);
+                    }
+                    for (; node < from; node++) {
+                        offsets.writeLong(data.count);
+                        writeVarint(data, 0);
+                    }
+                    offsets.writeLong(data.count);
+                    writeVarint(data, degree);
+                    int previous = 0;
+                    for (int i = 0; i < degree; i++) {
+                        writeVarint(data, neighbours[i] - previous);
+                        previous = neighbours[i];
+                    }
+                    edgeCount += degree;
+                    node++;
+                }
+                for (; node < nodeCount; node++) {
+                    offsets.writeLong(data.count);
+                    writeVarint(data, 0);
+                }
+                offsets.writeLong(data.count);
+                dataEnd = data.count;
+            }
+
+            try (FileChannel channel = FileChannel.open(output.toPath(), StandardOpenOption.WRITE)) {
+                channel.position(dataEnd);
+                try (FileChannel offsets = FileChannel.open(offsetsFile.toPath(), StandardOpenOption.READ)) {
+                    long position = 0;
+                    while (position < offsets.size())
+                        position += offsets.transferTo(position, offsets.size() - position, channel);
+                }
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC).putInt(nodeCount).putLong(edgeCount).putLong(dataEnd).flip();
+                while (header.hasRemaining())
+                    channel.write(header, header.position());
+                channel.force(false);
+            }
+        } finally {
+            for (Run run : queue)
+                run.in.close();
+            Files.deleteIfExists(offsetsFile.toPath());
+        }
+        return edgeCount;
+    }
+
+    private static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Counts bytes written, to record list positions as they are written.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+}
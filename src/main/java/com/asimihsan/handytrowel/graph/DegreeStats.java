@@ -0,0 +1,127 @@
+/** ========================================================================
+  * handytrowel: src/main/java/graph/DegreeStats.java
+  * Summary of a link graph's degree distribution.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.graph;
+
+/**
+ * Summary statistics of the in- or out-degrees of every node in a
+ * {@link LinkGraph}.
+ *
+ * @author Asim Ihsan
+ */
+public class DegreeStats {
+
+    private final int nodes;
+    private final long edges;
+    private final int max;
+    private final int p50;
+    private final int p90;
+    private final int p99;
+    private final int zero;
+
+    DegreeStats(int nodes, long edges, int max, int p50, int p90, int p99, int zero) {
+        this.nodes = nodes;
+        this.edges = edges;
+        this.max = max;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.zero = zero;
+    }
+
+    /**
+     * Compute the statistics from a degree histogram.
+     *
+     * @param histogram
+     *            how many nodes have each degree.
+     */
+    static DegreeStats fromHistogram(long[] histogram) {
+        int nodes = 0;
+        long edges = 0;
+        int max = 0;
+        for (int degree = 0; degree < histogram.length; degree++) {
+            nodes += histogram[degree];
+            edges += degree * histogram[degree];
+            if (histogram[degree] > 0)
+                max = degree;
+        }
+        return new DegreeStats(nodes, edges, max,
+                percentile(histogram, nodes, 0.5),
+                percentile(histogram, nodes, 0.9),
+                percentile(histogram, nodes, 0.99),
+                histogram.length == 0 ? 0 : (int) histogram[0]);
+    }
+
+    private static int percentile(long[] histogram, int nodes, double fraction) {
+        long rank = (long) Math.ceil(fraction * nodes);
+        long seen = 0;
+        for (int degree = 0; degree < histogram.length; degree++) {
+            seen += histogram[degree];
+            if (seen >= rank && seen > 0)
+                return degree;
+        }
+        return 0;
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    public long getEdges() {
+        return edges;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return nodes == 0 ? 0 : (double) edges / nodes;
+    }
+
+    public int getP50() {
+        return p50;
+    }
+
+    public int getP90() {
+        return p90;
+    }
+
+    public int getP99() {
+        return p99;
+    }
+
+    /**
+     * How many nodes have no edges at all in this direction.
+     */
+    public int getZero() {
+        return zero;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("nodes=%d edges=%d mean=%.2f p50=%d p90=%d p99=%d max=%d zero=%d",
+                nodes, edges, getMean(), p50, p90, p99, max, zero);
+    }
+
+}
@@ -0,0 +1,160 @@
+/** ========================================================================
+  * handytrowel: src/main/java/graph/LinkGraph.java
+  * Read-only view of a link graph written by LinkGraphSink.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.graph;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The link graph in a directory written by {@link LinkGraphSink}.
+ *
+ * Out- and in-links are both memory mapped, so queries touch only the
+ * pages holding the nodes asked about; the operating system's page cache,
+ * not the heap, holds the graph, however large it is. The URL dictionary
+ * is opened read-only and mapped too, so opening a graph is cheap and
+ * never writes to the directory.
+ *
+ * Thread-safe.
+ *
+ * @author Asim Ihsan
+ */
+public class LinkGraph implements Closeable {
+
+    static final String OUT_FILE = "out.adj";
+    static final String IN_FILE = "in.adj";
+
+    private final UrlDictionary dictionary;
+    private final AdjacencyFile out;
+    private final AdjacencyFile in;
+
+    public LinkGraph(File directory) throws IOException {
+        File outFile = new File(directory, OUT_FILE);
+        File inFile = new File(directory, IN_FILE);
+        if (!outFile.exists() || !inFile.exists())
+            throw new IOException("No link graph in " + directory);
+        this.out = new AdjacencyFile(outFile);
+        this.in = new AdjacencyFile(inFile);
+        this.dictionary = UrlDictionary.openReadOnly(directory);
+    }
+
+    public int nodeCount() {
+        return out.getNodeCount();
+    }
+
+    public long edgeCount() {
+        return out.getEdgeCount();
+    }
+
+    /**
+     * The node ID of url, or -1 if the graph doesn't contain it.
+     */
+    public int id(String url) {
+        int id = dictionary.id(url);
+        return id < nodeCount() ? id : -1;
+    }
+
+    public String url(int id) throws IOException {
+        return dictionary.url(id);
+    }
+
+    /**
+     * IDs of the pages the node links to, in ascending order.
+     */
+    public int[] outLinks(int id) {
+        return out.neighbours(id);
+    }
+
+    /**
+     * IDs of the pages linking to the node, in ascending order.
+     */
+    public int[] inLinks(int id) {
+        return in.neighbours(id);
+    }
+
+    public int outDegree(int id) {
+        return out.degree(id);
+    }
+
+    public int inDegree(int id) {
+        return in.degree(id);
+    }
+
+    /**
+     * URLs the page at url links to; empty if the graph doesn't contain it.
+     */
+    public List<String> outLinks(String url) throws IOException {
+        return urls(outLinks(id(url)));
+    }
+
+    /**
+     * URLs of the pages linking to url; empty if the graph doesn't contain
+     * it.
+     */
+    public List<String> inLinks(String url) throws IOException {
+        return urls(inLinks(id(url)));
+    }
+
+    private List<String> urls(int[] ids) throws IOException {
+        List<String> urls = new ArrayList<>(ids.length);
+        for (int id : ids)
+            urls.add(dictionary.url(id));
+        return urls;
+    }
+
+    public DegreeStats outDegreeStats() {
+        return degreeStats(out);
+    }
+
+    public DegreeStats inDegreeStats() {
+        return degreeStats(in);
+    }
+
+    private static DegreeStats degreeStats(AdjacencyFile adjacency) {
+        long[] histogram = new long[16];
+        for (int id = 0; id < adjacency.getNodeCount(); id++) {
+            int degree = adjacency.degree(id);
+            if (degree >= histogram.length) {
+                long[] grown = new long[Math.max(degree + 1, histogram.length * 2)];
+                System.arraycopy(histogram, 0, grown, 0, histogram.length);
+                histogram = grown;
+            }
+            histogram[degree]++;
+        }
+        return DegreeStats.fromHistogram(histogram);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.close();
+            in.close();
+        } finally {
+            dictionary.close();
+        }
+    }
+
+}
@@ -0,0 +1,200 @@
+/** ========================================================================
+  * handytrowel: src/main/java/graph/LinkGraphSink.java
+  * Write the link graph of processed articles to disk.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import com.asimihsan.handytrowel.crawl.Crawler;
+import com.asimihsan.handytrowel.output.ArticleSink;
+import com.asimihsan.handytrowel.pipeline.ArticleRecord;
+
+/**
+ * An {@link ArticleSink} that records which pages link to which, for
+ * reading back with {@link LinkGraph}.
+ *
+ * Each page and each link it contains, resolved against the page and with
+ * its fragment dropped, is interned in a {@link UrlDictionary}, and the
+ * pair of IDs is appended to edges.bin as two ints. Nothing per-edge is
+ * kept on the heap. On close the edges are sorted on disk into out.adj and
+ * in.adj, dropping duplicates and self-links.
+ *
+ * edges.bin is kept, so writing to the same directory again adds to the
+ * graph rather than replacing it.
+ *
+ * A page's URLs are flushed to the dictionary before its edges are
+ * written, so an edge never reaches edges.bin before the URLs it names.
+ * Opening a sink also drops a torn final edge and any edge naming an ID
+ * the dictionary doesn't have, as written by a crash mid-write.
+ *
+ * @author Asim Ihsan
+ */
+public class LinkGraphSink implements ArticleSink {
+
+    static final String EDGES_FILE = "edges.bin";
+
+    private final File directory;
+    private final UrlDictionary dictionary;
+    private final FileOutputStream edgesOut;
+    private final DataOutputStream edges;
+
+    /**
+     * How many edges to sort in memory at once when building the adjacency
+     * files; each takes 8 bytes.
+     */
+    private final int runEdges;
+
+    private LinkGraphSink(LinkGraphSinkBuilder builder) throws IOException {
+        this.directory = builder.directory;
+        this.runEdges = builder.runEdges;
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create " + directory);
+        this.dictionary = new UrlDictionary(directory);
+        File edgesFile = new File(directory, EDGES_FILE);
+        if (edgesFile.exists())
+            dropDanglingEdges(edgesFile, dictionary.size());
+        this.edgesOut = new FileOutputStream(edgesFile, true);
+        this.edges = new DataOutputStream(new BufferedOutputStream(edgesOut, 1 << 16));
+    }
+
+    /**
+     * Rewrite edgesFile without a trailing partial edge or edges naming an
+     * ID of nodeCount or more, if it has any.
+     */
+    private static void dropDanglingEdges(File edgesFile, int nodeCount) throws IOException {
+        File partial = new File(edgesFile.getPath() + ".tmp");
+        long dropped = edgesFile.length() % 8 == 0 ? 0 : 1;
+        try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(edgesFile), 1 << 16));
+             DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(partial), 1 << 16))) {
+            long edgeCount = edgesFile.length() / 8;
+            for (long i = 0; i < edgeCount; i++) {
+                int from = in.readInt();
+                int to = in.readInt();
+                if (from < 0 || from >= nodeCount || to < 0 || to >= nodeCount) {
+                    dropped++;
+                    continue;
+                }
+                out.writeInt(from);
+                out.writeInt(to);
+            }
+        } catch (EOFException e) {
+            Files.deleteIfExists(partial.toPath());
+            throw new IOException("Edge file changed while it was checked: " + edgesFile, e);
+        }
+        if (dropped == 0) {
+            Files.deleteIfExists(partial.toPath());
+            return;
+        }
+        Files.move(partial.toPath(), edgesFile.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static class LinkGraphSinkBuilder {
+        private File directory;
+        private int runEdges = 1 << 22;
+
+        /**
+         * Where the graph is written; created if missing.
+         */
+        public LinkGraphSinkBuilder directory(File directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        /**
+         * How many edges to sort in memory at once when building the
+         * adjacency files on close. Each takes 8 bytes of heap.
+         *
+         * The default value is 4194304 (32MB).
+         */
+        public LinkGraphSinkBuilder runEdges(int runEdges) {
+            this.runEdges = runEdges;
+            return this;
+        }
+
+        public LinkGraphSink build() throws IOException {
+            return new LinkGraphSink(this);
+        }
+    }
+
+    @Override
+    public synchronized void write(ArticleRecord record) throws IOException {
+        String page = Crawler.normalize(null, record.getUrl());
+        if (page == null)
+            page = record.getUrl();
+        int from = dictionary.intern(page);
+        if (record.getLinks() == null)
+            return;
+        int[] to = new int[record.getLinks().size()];
+        int count = 0;
+        for (String link : record.getLinks()) {
+            String url = Crawler.normalize(page, link);
+            if (url != null)
+                to[count++] = dictionary.intern(url);
+        }
+        dictionary.flush();
+        for (int i = 0; i < count; i++) {
+            edges.writeInt(from);
+            edges.writeInt(to[i]);
+        }
+    }
+
+    /**
+     * Force the dictionary, then the edges, to disk. The adjacency files
+     * are only built on close, but a sink reopened after a crash builds
+     * them from everything forced here.
+     */
+    @Override
+    public synchronized void checkpoint() throws IOException {
+        dictionary.sync();
+        edges.flush();
+        edgesOut.getFD().sync();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            edges.close();
+            dictionary.flush();
+            File edgesFile = new File(directory, EDGES_FILE);
+            int nodeCount = dictionary.size();
+            AdjacencyFile.write(edgesFile, false, nodeCount, new File(directory, LinkGraph.OUT_FILE), runEdges);
+            AdjacencyFile.write(edgesFile, true, nodeCount, new File(directory, LinkGraph.IN_FILE), runEdges);
+        } finally {
+            dictionary.close();
+        }
+    }
+
+}
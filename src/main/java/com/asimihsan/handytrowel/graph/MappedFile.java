@@ -0,0 +1,99 @@
+/** ========================================================================
+  * handytrowel: src/main/java/graph/MappedFile.java
+  * Read-only memory mapping of a file of any size.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.graph;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file memory mapped read-only, addressed by long positions.
+ *
+ * A single MappedByteBuffer is limited to 2GB, so the file is mapped in
+ * 1GB chunks. Each chunk overlaps the next by 8 bytes, so any value of up
+ * to 8 bytes can be read from the chunk its first byte is in.
+ *
+ * @author Asim Ihsan
+ */
+final class MappedFile implements Closeable {
+
+    private static final int CHUNK_BITS = 30;
+    private static final int OVERLAP = 8;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+    private final long size;
+    private final int chunkBits;
+    private final long chunkMask;
+
+    MappedFile(File file) throws IOException {
+        this(file, CHUNK_BITS);
+    }
+
+    /**
+     * Map file in chunks of 2^chunkBits bytes; small chunks are for tests.
+     */
+    MappedFile(File file, int chunkBits) throws IOException {
+        this.chunkBits = chunkBits;
+        this.chunkMask = (1L << chunkBits) - 1;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            size = channel.size();
+            chunks = new MappedByteBuffer[(int) ((size + chunkMask) >>> chunkBits)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i << chunkBits;
+                long length = Math.min(chunkMask + 1 + OVERLAP, size - start);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    byte get(long position) {
+        return chunks[(int) (position >>> chunkBits)].get((int) (position & chunkMask));
+    }
+
+    int getInt(long position) {
+        return chunks[(int) (position >>> chunkBits)].getInt((int) (position & chunkMask));
+    }
+
+    long getLong(long position) {
+        return chunks[(int) (position >>> chunkBits)].getLong((int) (position & chunkMask));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
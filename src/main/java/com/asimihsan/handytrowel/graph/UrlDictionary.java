@@ -0,0 +1,400 @@
+/** ========================================================================
+  * handytrowel: src/main/java/graph/UrlDictionary.java
+  * Disk-backed dictionary assigning each URL a dense integer ID.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Interns URLs as dense integer IDs 0, 1, 2, ... in the order they are
+ * first seen.
+ *
+ * The URLs themselves live on disk: urls.txt holds them in ID order, one
+ * per line, and urls.idx holds each one's starting byte offset as a long.
+ * Only a table of 64-bit URL fingerprints stays on the heap, about 12 to 24
+ * bytes per URL, so lookups by URL are exact up to 64-bit hash collisions.
+ * Reopening a dictionary rebuilds that table, and urls.idx, with one
+ * sequential read of urls.txt.
+ *
+ * Closing a dictionary also writes urls.fp, the fingerprints sorted with
+ * their IDs. {@link #openReadOnly(File)} memory maps that and urls.idx
+ * instead of reading urls.txt, so opening is cheap, nothing is written,
+ * and lookups by URL are binary searches. A read-only dictionary holds the
+ * URLs there were when urls.fp was written.
+ *
+ * Files are replaced by renaming new ones over them, never rewritten in
+ * place, so a read-only dictionary is unaffected by a writer opening the
+ * same directory.
+ *
+ * Thread-safe.
+ *
+ * @author Asim Ihsan
+ */
+public class UrlDictionary implements Closeable {
+
+    static final String URLS_FILE = "urls.txt";
+    static final String INDEX_FILE = "urls.idx";
+    static final String FINGERPRINTS_FILE = "urls.fp";
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    /**
+     * Bytes per urls.fp entry: a fingerprint and an ID.
+     */
+    private static final int FINGERPRINT_ENTRY_BYTES = 8 + 4;
+
+    private final File urlsFile;
+    private final File indexFile;
+    private final File fingerprintsFile;
+    private final boolean readOnly;
+    private FileOutputStream urlsOut;
+    private OutputStream urls;
+    private DataOutputStream index;
+    private long offset = 0;
+
+    private FileChannel urlsChannel;
+    private FileChannel indexChannel;
+
+    /**
+     * When read-only, urls.idx and urls.fp; otherwise null.
+     */
+    private MappedFile mappedIndex;
+    private MappedFile mappedFingerprints;
+
+    /**
+     * Fingerprints, zero for an empty slot, and the ID at the same index.
+     * Unused when read-only.
+     */
+    private long[] keys = new long[1024];
+    private int[] ids = new int[1024];
+    private int size = 0;
+
+    /**
+     * Open the dictionary in directory, creating it if it doesn't exist.
+     */
+    public UrlDictionary(File directory) throws IOException {
+        this(directory, false);
+    }
+
+    private UrlDictionary(File directory, boolean readOnly) throws IOException {
+        this.urlsFile = new File(directory, URLS_FILE);
+        this.indexFile = new File(directory, INDEX_FILE);
+        this.fingerprintsFile = new File(directory, FINGERPRINTS_FILE);
+        this.readOnly = readOnly;
+        if (readOnly) {
+            openMapped();
+            return;
+        }
+        if (urlsFile.exists())
+            load();
+        urlsOut = new FileOutputStream(urlsFile, true);
+        urls = new BufferedOutputStream(urlsOut, 1 << 16);
+        index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true), 1 << 16));
+    }
+
+    /**
+     * Open the dictionary in directory for lookups only.
+     *
+     * @throws IOException
+     *             if it has no urls.fp, i.e. was never closed.
+     */
+    public static UrlDictionary openReadOnly(File directory) throws IOException {
+        return new UrlDictionary(directory, true);
+    }
+
+    private void openMapped() throws IOException {
+        if (!fingerprintsFile.exists())
+            throw new IOException("No " + FINGERPRINTS_FILE + " in " + fingerprintsFile.getParent());
+        mappedFingerprints = new MappedFile(fingerprintsFile);
+        try {
+            mappedIndex = new MappedFile(indexFile);
+            urlsChannel = FileChannel.open(urlsFile.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        size = (int) Math.min(mappedFingerprints.size() / FINGERPRINT_ENTRY_BYTES, mappedIndex.size() / 8);
+    }
+
+    private void load() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        File rebuiltFile = new File(indexFile.getPath() + ".tmp");
+        try (InputStream in = new BufferedInputStream(new FileInputStream(urlsFile), 1 << 16);
+             DataOutputStream rebuilt = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(rebuiltFile), 1 << 16))) {
+            int b;
+            while ((b = in.read()) >= 0) {
+                if (b == '\n') {
+                    rebuilt.writeLong(offset);
+                    put(fingerprint(line.toByteArray()), size);
+                    offset += line.size() + 1;
+                    line.reset();
+                } else {
+                    line.write(b);
+                }
+            }
+        }
+        replace(rebuiltFile, indexFile);
+        if (line.size() > 0) {
+            // A partial line left by a crash.
+            try (FileChannel channel = FileChannel.open(urlsFile.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(offset);
+            }
+        }
+    }
+
+    private static void replace(File source, File target) throws IOException {
+        Files.move(source.toPath(), target.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * The ID of url, assigning it the next ID if it is new.
+     */
+    public synchronized int intern(String url) throws IOException {
+        if (readOnly)
+            throw new UnsupportedOperationException("URL dictionary is read-only");
+        byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+        long key = fingerprint(bytes);
+        int slot = slot(key);
+        if (keys[slot] != 0)
+            return ids[slot];
+
+        int id = size;
+        put(key, id);
+        index.writeLong(offset);
+        urls.write(bytes);
+        urls.write('\n');
+        offset += bytes.length + 1;
+        return id;
+    }
+
+    /**
+     * The ID of url, or -1 if it has none.
+     */
+    public synchronized int id(String url) {
+        long key = fingerprint(url.getBytes(StandardCharsets.UTF_8));
+        if (readOnly)
+            return searchFingerprints(key);
+        int slot = slot(key);
+        return keys[slot] == 0 ? -1 : ids[slot];
+    }
+
+    private int searchFingerprints(long key) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long position = (long) middle * FINGERPRINT_ENTRY_BYTES;
+            long fingerprint = mappedFingerprints.getLong(position);
+            if (fingerprint < key)
+                low = middle + 1;
+            else if (fingerprint > key)
+                high = middle - 1;
+            else
+                return mappedFingerprints.getInt(position + 8);
+        }
+        return -1;
+    }
+
+    /**
+     * The URL with the given ID.
+     */
+    public synchronized String url(int id) throws IOException {
+        if (id < 0 || id >= size)
+            throw new IllegalArgumentException("No URL has ID " + id);
+        if (readOnly)
+            return readLine(mappedIndex.getLong((long) id * 8));
+        flush();
+        if (urlsChannel == null) {
+            urlsChannel = FileChannel.open(urlsFile.toPath(), StandardOpenOption.READ);
+            indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ);
+        }
+        ByteBuffer position = ByteBuffer.allocate(8);
+        readFully(indexChannel, position, (long) id * 8);
+        long start = position.getLong(0);
+        ByteBuffer bytes = ByteBuffer.allocate((int) (endOffset(id) - start - 1));
+        readFully(urlsChannel, bytes, start);
+        return new String(bytes.array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The line of urls.txt starting at start, read in blocks until its
+     * newline.
+     */
+    private String readLine(long start) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        int length = 0;
+        while (true) {
+            int read = urlsChannel.read(buffer, start + buffer.position());
+            for (int i = length; i < buffer.position(); i++) {
+                if (buffer.get(i) == '\n')
+                    return new String(buffer.array(), 0, i, StandardCharsets.UTF_8);
+            }
+            length = buffer.position();
+            if (read < 0)
+                throw new IOException("Unexpected end of URL dictionary");
+            if (!buffer.hasRemaining()) {
+                ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+        }
+    }
+
+    private long endOffset(int id) throws IOException {
+        if (id + 1 == size)
+            return offset;
+        ByteBuffer position = ByteBuffer.allocate(8);
+        readFully(indexChannel, position, (long) (id + 1) * 8);
+        return position.getLong(0);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void flush() throws IOException {
+        if (readOnly)
+            return;
+        urls.flush();
+        index.flush();
+    }
+
+    /**
+     * Flush, then force urls.txt to disk. urls.idx isn't forced, as
+     * reopening the dictionary rebuilds it.
+     */
+    public synchronized void sync() throws IOException {
+        if (readOnly)
+            return;
+        flush();
+        urlsOut.getFD().sync();
+    }
+
+    /**
+     * Close the dictionary; unless it is read-only, first write urls.fp.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (!readOnly) {
+                urls.close();
+                index.close();
+                writeFingerprints();
+            }
+        } finally {
+            if (urlsChannel != null)
+                urlsChannel.close();
+            if (indexChannel != null)
+                indexChannel.close();
+            if (mappedIndex != null)
+                mappedIndex.close();
+            if (mappedFingerprints != null)
+                mappedFingerprints.close();
+        }
+    }
+
+    private void writeFingerprints() throws IOException {
+        long[] sorted = new long[size];
+        int count = 0;
+        for (long key : keys) {
+            if (key != 0)
+                sorted[count++] = key;
+        }
+        Arrays.sort(sorted);
+        File partial = new File(fingerprintsFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(partial), 1 << 16))) {
+            for (long key : sorted) {
+                out.writeLong(key);
+                out.writeInt(ids[slot(key)]);
+            }
+        }
+        replace(partial, fingerprintsFile);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Unexpected end of URL dictionary");
+        }
+    }
+
+    private void put(long key, int id) {
+        int slot = slot(key);
+        keys[slot] = key;
+        ids[slot] = id;
+        if (++size * 2 > keys.length)
+            grow();
+    }
+
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (keys[slot] != 0 && keys[slot] != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldIds = ids;
+        keys = new long[oldKeys.length * 2];
+        ids = new int[keys.length];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                ids[slot] = oldIds[i];
+            }
+        }
+    }
+
+    private static long fingerprint(byte[] url) {
+        long fingerprint = HASH.hashBytes(url).asLong();
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+}
@@ -0,0 +1,123 @@
+/** ========================================================================
+  * handytrowel: src/main/java/index/ArticleSearcher.java
+  * Search an article index written by LuceneIndexSink.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.index;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.FSDirectory;
+
+import com.asimihsan.handytrowel.nlp.LanguageIdentifier;
+import com.asimihsan.handytrowel.nlp.Languages;
+import com.asimihsan.handytrowel.nlp.TextAnalyzer.TextAnalyzerBuilder;
+
+/**
+ * Free text search over an index written by {@link LuceneIndexSink}.
+ *
+ * The query goes through the same {@link com.asimihsan.handytrowel.nlp.TextAnalyzer}
+ * as article bodies, so it is matched stem for stem against the indexed
+ * tokens. Any of the query's stems may match; articles matching more of
+ * them, more often, rank higher.
+ *
+ * The query is analyzed in the language it is given in, so its stopwords
+ * and stemmer match those of articles in that language. Unless one is
+ * asked for, the language is identified like an article's; queries too
+ * short to identify, or in an unsupported language, are taken as English.
+ *
+ * @author Asim Ihsan
+ */
+public class ArticleSearcher implements Closeable {
+
+    private static final int EXCERPT_LENGTH = 200;
+
+    private final IndexReader reader;
+    private final IndexSearcher searcher;
+    private final LanguageIdentifier languageIdentifier;
+
+    public ArticleSearcher(File directory) throws IOException {
+        this.reader = IndexReader.open(FSDirectory.open(directory));
+        this.searcher = new IndexSearcher(reader);
+        this.languageIdentifier = new LanguageIdentifier();
+    }
+
+    public List<SearchHit> search(String queryText, int maxHits) throws IOException {
+        return search(queryText, null, maxHits);
+    }
+
+    /**
+     * @param language
+     *            ISO 639-1 code of the query's language, one of
+     *            {@link Languages#SUPPORTED}, or null to identify it.
+     */
+    public List<SearchHit> search(String queryText, String language, int maxHits) throws IOException {
+        if (language == null) {
+            language = languageIdentifier.identify(queryText);
+            if (!Languages.isSupported(language))
+                language = Languages.ENGLISH;
+        } else if (!Languages.isSupported(language)) {
+            throw new IllegalArgumentException("Unsupported query language: " + language);
+        }
+        List<String> stems = new TextAnalyzerBuilder()
+        .body(queryText)
+        .language(language)
+        .build()
+        .analyze()
+        .getTokens();
+        List<SearchHit> hits = new ArrayList<>();
+        if (stems.isEmpty())
+            return hits;
+
+        BooleanQuery query = new BooleanQuery();
+        for (String stem : stems)
+            query.add(new TermQuery(new Term(LuceneIndexSink.FIELD_TOKENS, stem)), BooleanClause.Occur.SHOULD);
+
+        TopDocs topDocs = searcher.search(query, maxHits);
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+            Document doc = searcher.doc(scoreDoc.doc);
+            String body = doc.get(LuceneIndexSink.FIELD_BODY);
+            String excerpt = body == null ? null : body.substring(0, Math.min(body.length(), EXCERPT_LENGTH));
+            hits.add(new SearchHit(doc.get(LuceneIndexSink.FIELD_URL), scoreDoc.score, excerpt));
+        }
+        return hits;
+    }
+
+    @Override
+    public void close() throws IOException {
+        searcher.close();
+        reader.close();
+    }
+
+}
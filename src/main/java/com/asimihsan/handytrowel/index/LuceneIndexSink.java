@@ -0,0 +1,258 @@
+/** ========================================================================
+  * handytrowel: src/main/java/index/LuceneIndexSink.java
+  * Write article records into a local Lucene index.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Version;
+
+import com.asimihsan.handytrowel.output.ArticleSink;
+import com.asimihsan.handytrowel.pipeline.ArticleRecord;
+import com.google.common.base.Joiner;
+
+/**
+ * An {@link ArticleSink} that adds each article to a Lucene index on disk.
+ *
+ * Each document holds the article URL, its stemmed tokens (indexed but not
+ * stored), its extracted body (stored but not indexed) and its links.
+ * Documents are keyed on URL, so re-processing a URL replaces its old
+ * document.
+ *
+ * Indexing happens on a small pool of threads fed by a bounded queue, so
+ * the analysis threads calling write() only block when indexing falls
+ * behind. The index is committed every commitEvery documents and on close,
+ * which bounds how much work a crash loses. checkpoint() holds back new
+ * documents until the queued ones are added, then commits.
+ *
+ * @author Asim Ihsan
+ */
+public class LuceneIndexSink implements ArticleSink {
+
+    public static final Version LUCENE_VERSION = Version.LUCENE_36;
+
+    public static final String FIELD_URL = "url";
+    public static final String FIELD_TOKENS = "tokens";
+    public static final String FIELD_BODY = "extractedBody";
+    public static final String FIELD_LINK = "link";
+
+    private final IndexWriter writer;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * How many documents to add between commits.
+     */
+    private final int commitEvery;
+
+    private final AtomicLong indexed = new AtomicLong();
+
+    /**
+     * Guards queued and checkpointing.
+     */
+    private final Object queueLock = new Object();
+
+    /**
+     * How many documents have been handed to the indexing threads but not
+     * yet added.
+     */
+    private int queued = 0;
+
+    /**
+     * Whether a checkpoint is waiting for the queued documents, in which
+     * case write() waits for it.
+     */
+    private boolean checkpointing = false;
+
+    /**
+     * The first failure on an indexing thread, rethrown to the next caller
+     * of write() or close().
+     */
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+    public static class LuceneIndexSinkBuilder {
+        private File directory;
+        private int indexThreads = 2;
+        private int commitEvery = 1000;
+        private double ramBufferSizeMB = 64;
+
+        public LuceneIndexSinkBuilder directory(File directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        public LuceneIndexSinkBuilder indexThreads(int indexThreads) {
+            this.indexThreads = indexThreads;
+            return this;
+        }
+
+        public LuceneIndexSinkBuilder commitEvery(int commitEvery) {
+            this.commitEvery = commitEvery;
+            return this;
+        }
+
+        public LuceneIndexSinkBuilder ramBufferSizeMB(double ramBufferSizeMB) {
+            this.ramBufferSizeMB = ramBufferSizeMB;
+            return this;
+        }
+
+        public LuceneIndexSink build() throws IOException {
+            return new LuceneIndexSink(this);
+        }
+    }
+
+    private LuceneIndexSink(LuceneIndexSinkBuilder builder) throws IOException {
+        this.commitEvery = builder.commitEvery;
+        IndexWriterConfig config = new IndexWriterConfig(LUCENE_VERSION,
+                new WhitespaceAnalyzer(LUCENE_VERSION));
+        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        config.setRAMBufferSizeMB(builder.ramBufferSizeMB);
+        this.writer = new IndexWriter(FSDirectory.open(builder.directory), config);
+        this.executor = new ThreadPoolExecutor(builder.indexThreads, builder.indexThreads,
+                                               0L, TimeUnit.MILLISECONDS,
+                                               new ArrayBlockingQueue<Runnable>(builder.indexThreads * 64),
+                                               new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Build the Lucene document for a record.
+     */
+    static Document toDocument(ArticleRecord record) {
+        Document doc = new Document();
+        doc.add(new Field(FIELD_URL, record.getUrl(), Field.Store.YES, Field.Index.NOT_ANALYZED));
+        if (record.getTokens() != null) {
+            // Tokens are already normalized and stemmed, so only split them
+            // back apart on whitespace.
+            doc.add(new Field(FIELD_TOKENS, Joiner.on(' ').join(record.getTokens()),
+                              Field.Store.NO, Field.Index.ANALYZED));
+        }
+        if (record.getExtractedBody() != null) {
+            doc.add(new Field(FIELD_BODY, record.getExtractedBody(), Field.Store.YES, Field.Index.NO));
+        }
+        if (record.getLinks() != null) {
+            for (String link : record.getLinks())
+                doc.add(new Field(FIELD_LINK, link, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        }
+        return doc;
+    }
+
+    @Override
+    public void write(final ArticleRecord record) throws IOException {
+        rethrowFailure();
+        // Aborted articles have nothing worth searching.
+        if (record.getAborted() != null)
+            return;
+        synchronized (queueLock) {
+            while (checkpointing)
+                await();
+            queued++;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writer.updateDocument(new Term(FIELD_URL, record.getUrl()), toDocument(record));
+                    if (indexed.incrementAndGet() % commitEvery == 0)
+                        writer.commit();
+                } catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    synchronized (queueLock) {
+                        if (--queued == 0)
+                            queueLock.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public void checkpoint() throws IOException {
+        synchronized (queueLock) {
+            while (checkpointing)
+                await();
+            checkpointing = true;
+        }
+        try {
+            synchronized (queueLock) {
+                while (queued > 0)
+                    await();
+            }
+            rethrowFailure();
+            writer.commit();
+        } finally {
+            synchronized (queueLock) {
+                checkpointing = false;
+                queueLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Wait on queueLock, which the caller holds.
+     */
+    private void await() throws InterruptedIOException {
+        try {
+            queueLock.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the index queue");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            writer.commit();
+        } finally {
+            writer.close();
+        }
+        rethrowFailure();
+    }
+
+    private void rethrowFailure() throws IOException {
+        IOException e = failure.get();
+        if (e != null)
+            throw e;
+    }
+
+}
@@ -0,0 +1,59 @@
+/** ========================================================================
+  * handytrowel: src/main/java/index/SearchHit.java
+  * A single result of searching the article index.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.index;
+
+/**
+ * An article matching a search, see {@link ArticleSearcher}.
+ *
+ * @author Asim Ihsan
+ */
+public class SearchHit {
+
+    private final String url;
+    private final float score;
+
+    /**
+     * The start of the article's extracted body.
+     */
+    private final String excerpt;
+
+    public SearchHit(String url, float score, String excerpt) {
+        this.url = url;
+        this.score = score;
+        this.excerpt = excerpt;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    public String getExcerpt() {
+        return excerpt;
+    }
+
+}
@@ -0,0 +1,230 @@
+/** ========================================================================
+  * handytrowel: src/main/java/loadtest/LoadTest.java
+  * Drive the article pipeline against a synthetic site and report.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.loadtest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import com.asimihsan.handytrowel.loadtest.SyntheticSite.SyntheticSiteBuilder;
+import com.asimihsan.handytrowel.network.CompletionStrategy;
+import com.asimihsan.handytrowel.network.HTMLFetcher.HTMLFetcherBuilder;
+import com.asimihsan.handytrowel.network.ResourceFilter;
+import com.asimihsan.handytrowel.network.ResourceFilter.ResourceFilterBuilder;
+import com.asimihsan.handytrowel.nlp.LanguageIdentifier;
+import com.asimihsan.handytrowel.pipeline.ArticlePipeline;
+import com.asimihsan.handytrowel.pipeline.ArticlePipeline.ArticlePipelineBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Run the full fetch, extract and analyze pipeline against a local
+ * {@link SyntheticSite} and print a {@link LoadTestReport} as JSON.
+ *
+ * For example, 2000 pages of 50KB on 8 threads, a quarter of them rendered
+ * by JavaScript and one in a hundred failing:
+ *
+ * <pre>
+ * ./gradlew loadTest -PloadTestArgs="--pages 2000 --page-bytes 50000 --threads 8 --js-fraction 0.25 --error-fraction 0.01"
+ * </pre>
+ *
+ * @author Asim Ihsan
+ */
+public class LoadTest {
+
+    @Option(name = "--pages", usage = "How many pages the synthetic site has")
+    private int pages = 1000;
+
+    @Option(name = "--requests", usage = "How many pages to process (default: every page once)")
+    private int requests = 0;
+
+    @Option(name = "--warmup", usage = "How many pages to process, unmeasured, before the run")
+    private int warmup = 0;
+
+    @Option(name = "--threads", usage = "How many pages to process at once")
+    private int threads = 4;
+
+    @Option(name = "--page-bytes", usage = "Roughly how much article text each page has")
+    private int pageBytes = 20000;
+
+    @Option(name = "--links", usage = "How many links each article has")
+    private int links = 20;
+
+    @Option(name = "--latency-millis", usage = "Delay before every page response")
+    private int latencyMillis = 0;
+
+    @Option(name = "--jitter-millis", usage = "Up to this much more delay, at random")
+    private int jitterMillis = 0;
+
+    @Option(name = "--slow-resource-millis", usage = "Give every page a script that takes this long to load")
+    private int slowResourceMillis = 0;
+
+    @Option(name = "--js-fraction", usage = "Fraction of pages whose body is rendered by JavaScript")
+    private double jsFraction = 0;
+
+    @Option(name = "--error-fraction", usage = "Fraction of pages that respond with HTTP 500")
+    private double errorFraction = 0;
+
+    @Option(name = "--hang-fraction", usage = "Fraction of pages that hang for --hang-millis")
+    private double hangFraction = 0;
+
+    @Option(name = "--hang-millis", usage = "How long hanging pages hang")
+    private int hangMillis = 60000;
+
+    @Option(name = "--seed", usage = "Seed for the synthetic site's pages")
+    private long seed = 0;
+
+    @Option(name = "--timeout-millis", usage = "Fetch timeout per page")
+    private int timeoutMillis = 30000;
+
+    @Option(name = "--completion", usage = "When a page counts as loaded: FULL_LOAD, DOM_STABLE or CONTENT_READY")
+    private CompletionStrategy completionStrategy = CompletionStrategy.FULL_LOAD;
+
+    @Option(name = "--no-resource-filter", usage = "Let pages load every subresource")
+    private boolean noResourceFilter = false;
+
+    public static void main(String[] args) throws Exception {
+        new LoadTest().doMain(args);
+    }
+
+    public void doMain(String[] args) throws Exception {
+        CmdLineParser parser = new CmdLineParser(this);
+        parser.setUsageWidth(80);
+        try {
+            parser.parseArgument(args);
+        } catch (final CmdLineException e) {
+            System.err.println(e.getMessage());
+            System.err.println("LoadTest [options]");
+            parser.printUsage(System.err);
+            System.err.println();
+            throw e;
+        }
+
+        SyntheticSite site = new SyntheticSiteBuilder()
+        .pages(pages)
+        .pageBytes(pageBytes)
+        .links(links)
+        .latencyMillis(latencyMillis)
+        .jitterMillis(jitterMillis)
+        .slowResourceMillis(slowResourceMillis)
+        .jsRenderedFraction(jsFraction)
+        .errorFraction(errorFraction)
+        .hangFraction(hangFraction)
+        .hangMillis(hangMillis)
+        .seed(seed)
+        .serverThreads(Math.max(200, threads * 4))
+        .build();
+        site.start();
+        try {
+            ArticlePipeline pipeline = newPipeline();
+            List<String> urls = site.pageUrls();
+            if (warmup > 0)
+                run(pipeline, site, cycle(urls, warmup), threads);
+            LoadTestReport report = run(pipeline, site, cycle(urls, requests > 0 ? requests : pages), threads);
+            ObjectMapper mapper = new ObjectMapper();
+            mapper.enable(SerializationFeature.INDENT_OUTPUT);
+            System.out.println(mapper.writeValueAsString(report));
+        } finally {
+            site.stop();
+        }
+    }
+
+    private ArticlePipeline newPipeline() throws IOException {
+        ResourceFilter resourceFilter = null;
+        if (!noResourceFilter)
+            resourceFilter = new ResourceFilterBuilder().defaults().build();
+        return new ArticlePipelineBuilder()
+        .fetcher(new HTMLFetcherBuilder()
+                 .timeoutMillis(timeoutMillis)
+                 .resourceFilter(resourceFilter)
+                 .completionStrategy(completionStrategy)
+                 .build())
+        .languageIdentifier(new LanguageIdentifier())
+        .build();
+    }
+
+    /**
+     * The first count URLs of the list repeated end to end.
+     */
+    private static List<String> cycle(List<String> urls, int count) {
+        List<String> cycled = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            cycled.add(urls.get(i % urls.size()));
+        return cycled;
+    }
+
+    /**
+     * Process every URL of site through the pipeline on the given number of
+     * threads, timing each one. Only one run may use the site at a time.
+     */
+    public static LoadTestReport run(final ArticlePipeline pipeline, SyntheticSite site,
+                                     final List<String> urls, int threads)
+    throws InterruptedException {
+        final long[] latencies = new long[urls.size()];
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicInteger timedOut = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+
+        int errorsBefore = site.getErrorsServed();
+        LoadTestReport.Baseline baseline = new LoadTestReport.Baseline();
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < urls.size(); i++) {
+            final int index = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long pageStart = System.nanoTime();
+                    try {
+                        pipeline.process(urls.get(index));
+                        succeeded.incrementAndGet();
+                    } catch (TimeoutException e) {
+                        timedOut.incrementAndGet();
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                    }
+                    latencies[index] = (System.nanoTime() - pageStart) / 1000000;
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        // The pipeline never sees status codes, so pages the site failed
+        // were rendered as error pages and processed like any other.
+        int errors = Math.min(site.getErrorsServed() - errorsBefore, succeeded.get());
+        return new LoadTestReport(baseline, threads, elapsedMillis, latencies,
+                                  succeeded.get() - errors, timedOut.get(), failed.get() + errors);
+    }
+
+}
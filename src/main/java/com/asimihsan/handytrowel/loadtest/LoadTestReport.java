@@ -0,0 +1,225 @@
+/** ========================================================================
+  * handytrowel: src/main/java/loadtest/LoadTestReport.java
+  * Throughput, latency and resource usage measured by a load test.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * What a {@link LoadTest} run measured, serialized to JSON.
+ *
+ * Resource usage covers this JVM only. PhantomJS runs in processes of its
+ * own, so its CPU and memory are not included.
+ *
+ * @author Asim Ihsan
+ */
+@JsonPropertyOrder({"pages", "succeeded", "timedOut", "failed", "threads", "elapsedMillis",
+                    "pagesPerSecond", "latencyMillis", "cpuMillis", "peakHeapBytes",
+                    "gcCount", "gcMillis", "peakThreads"})
+public class LoadTestReport {
+
+    private final int pages;
+    private final int succeeded;
+    private final int timedOut;
+    private final int failed;
+    private final int threads;
+    private final long elapsedMillis;
+    private final Percentiles latencyMillis;
+    private final long cpuMillis;
+    private final long peakHeapBytes;
+    private final long gcCount;
+    private final long gcMillis;
+    private final int peakThreads;
+
+    /**
+     * Latency percentiles of a run, in milliseconds.
+     */
+    @JsonPropertyOrder({"p50", "p90", "p99", "max"})
+    public static class Percentiles {
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long max;
+
+        Percentiles(long[] values) {
+            long[] sorted = Arrays.copyOf(values, values.length);
+            Arrays.sort(sorted);
+            p50 = percentile(sorted, 0.50);
+            p90 = percentile(sorted, 0.90);
+            p99 = percentile(sorted, 0.99);
+            max = sorted.length == 0 ? 0 : sorted[sorted.length - 1];
+        }
+
+        /**
+         * Nearest-rank percentile of sorted values.
+         */
+        static long percentile(long[] sorted, double p) {
+            if (sorted.length == 0)
+                return 0;
+            int rank = (int) Math.ceil(p * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+
+    /**
+     * Counters sampled before a run, so the report can show how much they
+     * moved during it.
+     */
+    static class Baseline {
+        private final long cpuNanos = processCpuNanos();
+        private final long gcCount = totalGcCount();
+        private final long gcMillis = totalGcMillis();
+
+        Baseline() {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+                pool.resetPeakUsage();
+            ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+        }
+    }
+
+    LoadTestReport(Baseline baseline, int threads, long elapsedMillis, long[] latencies,
+                   int succeeded, int timedOut, int failed) {
+        this.pages = latencies.length;
+        this.succeeded = succeeded;
+        this.timedOut = timedOut;
+        this.failed = failed;
+        this.threads = threads;
+        this.elapsedMillis = elapsedMillis;
+        this.latencyMillis = new Percentiles(latencies);
+        long cpuNanos = processCpuNanos();
+        this.cpuMillis = cpuNanos < 0 ? -1 : (cpuNanos - baseline.cpuNanos) / 1000000;
+        this.peakHeapBytes = peakHeapBytes();
+        this.gcCount = totalGcCount() - baseline.gcCount;
+        this.gcMillis = totalGcMillis() - baseline.gcMillis;
+        this.peakThreads = ManagementFactory.getThreadMXBean().getPeakThreadCount();
+    }
+
+    /**
+     * CPU time used by this JVM, or -1 if the platform doesn't say.
+     */
+    private static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean)
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        return -1;
+    }
+
+    private static long peakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null)
+                peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    private static long totalGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, gc.getCollectionCount());
+        return count;
+    }
+
+    private static long totalGcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            millis += Math.max(0, gc.getCollectionTime());
+        return millis;
+    }
+
+    public int getPages() {
+        return pages;
+    }
+
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    public int getTimedOut() {
+        return timedOut;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double getPagesPerSecond() {
+        return elapsedMillis == 0 ? 0 : pages * 1000.0 / elapsedMillis;
+    }
+
+    public Percentiles getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public long getCpuMillis() {
+        return cpuMillis;
+    }
+
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    public long getGcMillis() {
+        return gcMillis;
+    }
+
+    public int getPeakThreads() {
+        return peakThreads;
+    }
+
+}
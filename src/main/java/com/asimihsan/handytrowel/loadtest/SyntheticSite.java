@@ -0,0 +1,403 @@
+/** ========================================================================
+  * handytrowel: src/main/java/loadtest/SyntheticSite.java
+  * Local Jetty server that generates synthetic article pages for load tests.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A local web site of synthetic news articles, for measuring the whole
+ * fetch, extract and analyze pipeline without touching the internet.
+ *
+ * Pages are served at /page/0 to /page/(pages - 1). Each page is generated
+ * on request from a random number generator seeded with the site seed and
+ * the page number, so the same site always serves the same pages. A page
+ * has roughly pageBytes of article text spread over paragraphs, links
+ * links to other pages inside the article text, and some boilerplate
+ * navigation around it. Every page can also be given:
+ *
+ * - injected latency before the response starts, latencyMillis plus up to
+ *   jitterMillis more;
+ * - a slow asynchronous script at /slow/n.js that takes slowResourceMillis
+ *   to arrive, which holds off the page's load event but not its content;
+ * - a body written by JavaScript after the page loads rather than sent in
+ *   the HTML, on a jsRenderedFraction of pages;
+ * - an HTTP 500 response, on an errorFraction of pages;
+ * - a response that hangs for hangMillis, on a hangFraction of pages.
+ *
+ * A browser renders an error response like any other page and WebDriver
+ * never shows its status, so the site counts the errors it serves for
+ * clients to tell them apart by.
+ *
+ * @author Asim Ihsan
+ */
+public class SyntheticSite {
+
+    /**
+     * Words article text is drawn from. They avoid the stopword list so that
+     * analysis has real tokens to stem.
+     */
+    private static final String[] WORDS = {
+        "vaccine", "campaign", "outbreak", "province", "minister", "refugee",
+        "border", "village", "harvest", "monsoon", "election", "parliament",
+        "treaty", "pipeline", "reactor", "satellite", "currency", "inflation",
+        "shipping", "harbor", "glacier", "drought", "wildfire", "hospital",
+        "surgeon", "clinic", "courthouse", "verdict", "senator", "governor",
+        "protest", "strike", "factory", "tariff", "orchard", "vineyard",
+        "railway", "airport", "tunnel", "bridge", "museum", "archive",
+        "scientist", "telescope", "genome", "protein", "battery", "turbine",
+        "fishermen", "coastline", "typhoon", "earthquake", "volcano", "aquifer",
+        "copper", "lithium", "uranium", "wheat", "cattle", "cocoa",
+    };
+
+    private static final String NAVIGATION =
+        "<div class=\"nav\"><a href=\"/\">Home</a> | <a href=\"/world\">World</a> | "
+        + "<a href=\"/business\">Business</a> | <a href=\"/science\">Science</a></div>\n";
+
+    private static final String FOOTER =
+        "<div class=\"footer\"><a href=\"/about\">About</a> | <a href=\"/privacy\">Privacy</a> | "
+        + "<a href=\"/terms\">Terms of Service</a> | Copyright Synthetic News</div>\n";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final int pages;
+    private final int pageBytes;
+    private final int links;
+    private final int latencyMillis;
+    private final int jitterMillis;
+    private final int slowResourceMillis;
+    private final double jsRenderedFraction;
+    private final double errorFraction;
+    private final double hangFraction;
+    private final int hangMillis;
+    private final long seed;
+    private final int serverThreads;
+
+    private Server server;
+    private URI baseUri;
+
+    private final AtomicInteger errorsServed = new AtomicInteger();
+
+    public static class SyntheticSiteBuilder {
+        private int pages = 1000;
+        private int pageBytes = 20000;
+        private int links = 20;
+        private int latencyMillis = 0;
+        private int jitterMillis = 0;
+        private int slowResourceMillis = 0;
+        private double jsRenderedFraction = 0;
+        private double errorFraction = 0;
+        private double hangFraction = 0;
+        private int hangMillis = 60000;
+        private long seed = 0;
+        private int serverThreads = 200;
+
+        public SyntheticSiteBuilder pages(int pages) {
+            this.pages = pages;
+            return this;
+        }
+
+        public SyntheticSiteBuilder pageBytes(int pageBytes) {
+            this.pageBytes = pageBytes;
+            return this;
+        }
+
+        public SyntheticSiteBuilder links(int links) {
+            this.links = links;
+            return this;
+        }
+
+        public SyntheticSiteBuilder latencyMillis(int latencyMillis) {
+            this.latencyMillis = latencyMillis;
+            return this;
+        }
+
+        public SyntheticSiteBuilder jitterMillis(int jitterMillis) {
+            this.jitterMillis = jitterMillis;
+            return this;
+        }
+
+        public SyntheticSiteBuilder slowResourceMillis(int slowResourceMillis) {
+            this.slowResourceMillis = slowResourceMillis;
+            return this;
+        }
+
+        public SyntheticSiteBuilder jsRenderedFraction(double jsRenderedFraction) {
+            this.jsRenderedFraction = jsRenderedFraction;
+            return this;
+        }
+
+        public SyntheticSiteBuilder errorFraction(double errorFraction) {
+            this.errorFraction = errorFraction;
+            return this;
+        }
+
+        public SyntheticSiteBuilder hangFraction(double hangFraction) {
+            this.hangFraction = hangFraction;
+            return this;
+        }
+
+        public SyntheticSiteBuilder hangMillis(int hangMillis) {
+            this.hangMillis = hangMillis;
+            return this;
+        }
+
+        public SyntheticSiteBuilder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public SyntheticSiteBuilder serverThreads(int serverThreads) {
+            this.serverThreads = serverThreads;
+            return this;
+        }
+
+        public SyntheticSite build() {
+            return new SyntheticSite(this);
+        }
+    }
+
+    private SyntheticSite(SyntheticSiteBuilder builder) {
+        this.pages = builder.pages;
+        this.pageBytes = builder.pageBytes;
+        this.links = builder.links;
+        this.latencyMillis = builder.latencyMillis;
+        this.jitterMillis = builder.jitterMillis;
+        this.slowResourceMillis = builder.slowResourceMillis;
+        this.jsRenderedFraction = builder.jsRenderedFraction;
+        this.errorFraction = builder.errorFraction;
+        this.hangFraction = builder.hangFraction;
+        this.hangMillis = builder.hangMillis;
+        this.seed = builder.seed;
+        this.serverThreads = builder.serverThreads;
+    }
+
+    /**
+     * Start serving on an unused port of localhost.
+     */
+    public void start() throws Exception {
+        server = new Server(new QueuedThreadPool(serverThreads));
+        ServerConnector connector = new ServerConnector(server);
+        connector.setHost("localhost");
+        connector.setPort(0);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest,
+                               HttpServletRequest request, HttpServletResponse response)
+            throws IOException, ServletException {
+                baseRequest.setHandled(true);
+                serve(target, response);
+            }
+        });
+        server.start();
+        baseUri = new URI(String.format("http://localhost:%d/", connector.getLocalPort()));
+    }
+
+    /**
+     * Stop serving.
+     */
+    public void stop() throws Exception {
+        if (server != null)
+            server.stop();
+    }
+
+    /**
+     * How many HTTP 500 responses the site has served so far.
+     */
+    public int getErrorsServed() {
+        return errorsServed.get();
+    }
+
+    public URI getBaseUri() {
+        return baseUri;
+    }
+
+    public String pageUrl(int page) {
+        return baseUri.resolve("/page/" + page).toString();
+    }
+
+    /**
+     * The URLs of every page on the site, in page order.
+     */
+    public List<String> pageUrls() {
+        List<String> urls = new ArrayList<>(pages);
+        for (int i = 0; i < pages; i++)
+            urls.add(pageUrl(i));
+        return urls;
+    }
+
+    private void serve(String target, HttpServletResponse response) throws IOException {
+        if (target.startsWith("/slow/")) {
+            sleep(slowResourceMillis);
+            response.setContentType("application/javascript;charset=utf-8");
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.getWriter().println("window.syntheticSlowResource = true;");
+            return;
+        }
+
+        int page = pageNumber(target);
+        if (page < 0) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        Random random = random(page, 0);
+        sleep(latencyMillis + (jitterMillis > 0 ? random.nextInt(jitterMillis + 1) : 0));
+        double outcome = random.nextDouble();
+        if (outcome < errorFraction) {
+            errorsServed.incrementAndGet();
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+        if (outcome < errorFraction + hangFraction)
+            sleep(hangMillis);
+
+        response.setContentType("text/html;charset=utf-8");
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.getWriter().write(render(page));
+    }
+
+    /**
+     * The HTML of a page, exactly as it is served.
+     */
+    public String render(int page) throws IOException {
+        Random random = random(page, 1);
+        boolean jsRendered = random.nextDouble() < jsRenderedFraction;
+
+        List<String> paragraphs = paragraphs(page, random);
+        StringBuilder html = new StringBuilder(pageBytes + 2048);
+        html.append("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\">\n<title>")
+        .append(title(random)).append("</title></head>\n<body>\n").append(NAVIGATION);
+        if (jsRendered) {
+            html.append("<div id=\"article\"></div>\n<script>\n")
+            .append("var paragraphs = ").append(MAPPER.writeValueAsString(paragraphs)).append(";\n")
+            .append("window.addEventListener('load', function() {\n")
+            .append("  var html = '';\n")
+            .append("  for (var i = 0; i < paragraphs.length; i++) html += '<p>' + paragraphs[i] + '</p>';\n")
+            .append("  document.getElementById('article').innerHTML = html;\n")
+            .append("});\n</script>\n");
+        } else {
+            html.append("<div id=\"article\">\n");
+            for (String paragraph : paragraphs)
+                html.append("<p>").append(paragraph).append("</p>\n");
+            html.append("</div>\n");
+        }
+        html.append(FOOTER);
+        if (slowResourceMillis > 0)
+            html.append("<script async src=\"/slow/").append(page).append(".js\"></script>\n");
+        html.append("</body></html>\n");
+        return html.toString();
+    }
+
+    private List<String> paragraphs(int page, Random random) {
+        List<String> paragraphs = new ArrayList<>();
+        int remainingLinks = links;
+        int remainingBytes = pageBytes;
+        while (remainingBytes > 0) {
+            StringBuilder paragraph = new StringBuilder();
+            int sentences = 3 + random.nextInt(4);
+            for (int s = 0; s < sentences; s++) {
+                int words = 8 + random.nextInt(12);
+                for (int w = 0; w < words; w++) {
+                    String word = WORDS[random.nextInt(WORDS.length)];
+                    if (w == 0)
+                        word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+                    paragraph.append(word).append(w == words - 1 ? ". " : " ");
+                }
+            }
+            if (remainingLinks > 0) {
+                int linksHere = Math.min(remainingLinks, 1 + random.nextInt(3));
+                for (int l = 0; l < linksHere; l++) {
+                    int target = (page + 1 + random.nextInt(Math.max(1, pages - 1))) % pages;
+                    paragraph.append("See <a href=\"/page/").append(target).append("\">")
+                    .append(WORDS[random.nextInt(WORDS.length)]).append(" report</a>. ");
+                }
+                remainingLinks -= linksHere;
+            }
+            remainingBytes -= paragraph.length() + 8;
+            paragraphs.add(paragraph.toString().trim());
+        }
+        return paragraphs;
+    }
+
+    private static String title(Random random) {
+        StringBuilder title = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            title.append(Character.toUpperCase(word.charAt(0))).append(word.substring(1)).append(' ');
+        }
+        return title.toString().trim();
+    }
+
+    /**
+     * Separate streams for how a page is served and what it contains, so
+     * changing one doesn't reshuffle the other.
+     */
+    private Random random(int page, int stream) {
+        // java.util.Random's first outputs for adjacent seeds are close
+        // together, so scramble the seed first (SplitMix64's finalizer).
+        long z = (seed * 1000003 + page) * 2 + stream;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return new Random(z ^ (z >>> 31));
+    }
+
+    private int pageNumber(String target) {
+        if (!target.startsWith("/page/"))
+            return -1;
+        try {
+            int page = Integer.parseInt(target.substring("/page/".length()));
+            return page >= 0 && page < pages ? page : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void sleep(int millis) {
+        if (millis <= 0)
+            return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
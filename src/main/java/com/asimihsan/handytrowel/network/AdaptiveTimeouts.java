@@ -0,0 +1,283 @@
+/** ========================================================================
+  * handytrowel: src/main/java/network/AdaptiveTimeouts.java
+  * Per-host fetch timeouts derived from observed latencies.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.network;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * Track how long fetches from each host take, and derive from that how
+ * long the next fetch from the host should be given.
+ *
+ * Each host keeps its most recent window fetch times. Once a host has at
+ * least minSamples of them its timeout is the timeoutPercentile of those
+ * times multiplied by factor, clamped between floorMillis and
+ * ceilingMillis. Until then the caller's fallback timeout is used. Fetches
+ * that time out are recorded at the time they were allowed, so a host that
+ * keeps timing out sees its timeout grow towards the ceiling rather than
+ * shrink.
+ *
+ * At most maxHosts hosts are tracked; past that the host fetched from
+ * least recently is forgotten, and starts over on the fallback timeout if
+ * it is fetched from again.
+ *
+ * Thread-safe.
+ *
+ * @author Asim Ihsan
+ */
+public class AdaptiveTimeouts {
+
+    /**
+     * How many of each host's most recent fetch times to keep.
+     *
+     * The default value is 128.
+     */
+    private final int window;
+
+    /**
+     * How many fetch times a host needs before its timeout adapts.
+     *
+     * The default value is 10.
+     */
+    private final int minSamples;
+
+    /**
+     * Which percentile of a host's fetch times its timeout is based on.
+     *
+     * The default value is 0.99.
+     */
+    private final double timeoutPercentile;
+
+    /**
+     * What to multiply the percentile by to get the timeout.
+     *
+     * The default value is 3.
+     */
+    private final double factor;
+
+    /**
+     * The shortest and longest adapted timeouts.
+     *
+     * The default values are 5 and 60 seconds.
+     */
+    private final int floorMillis;
+    private final int ceilingMillis;
+
+    /**
+     * Which percentile of a host's fetch times counts as typical, after
+     * which a hedged second attempt may be started.
+     *
+     * The default value is 0.9.
+     */
+    private final double hedgePercentile;
+
+    /**
+     * How many hosts to keep fetch times for.
+     *
+     * The default value is 10,000.
+     */
+    private final int maxHosts;
+
+    private final LoadingCache<String, Samples> hosts;
+
+    public static class AdaptiveTimeoutsBuilder {
+        private int window = 128;
+        private int minSamples = 10;
+        private double timeoutPercentile = 0.99;
+        private double factor = 3;
+        private int floorMillis = 5 * 1000;
+        private int ceilingMillis = 60 * 1000;
+        private double hedgePercentile = 0.9;
+        private int maxHosts = 10 * 1000;
+
+        public AdaptiveTimeoutsBuilder window(int window) {
+            this.window = window;
+            return this;
+        }
+
+        public AdaptiveTimeoutsBuilder minSamples(int minSamples) {
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        public AdaptiveTimeoutsBuilder timeoutPercentile(double timeoutPercentile) {
+            this.timeoutPercentile = timeoutPercentile;
+            return this;
+        }
+
+        public AdaptiveTimeoutsBuilder factor(double factor) {
+            this.factor = factor;
+            return this;
+        }
+
+        public AdaptiveTimeoutsBuilder floorMillis(int floorMillis) {
+            this.floorMillis = floorMillis;
+            return this;
+        }
+
+        public AdaptiveTimeoutsBuilder ceilingMillis(int ceilingMillis) {
+            this.ceilingMillis = ceilingMillis;
+            return this;
+        }
+
+        public AdaptiveTimeoutsBuilder hedgePercentile(double hedgePercentile) {
+            this.hedgePercentile = hedgePercentile;
+            return this;
+        }
+
+        public AdaptiveTimeoutsBuilder maxHosts(int maxHosts) {
+            this.maxHosts = maxHosts;
+            return this;
+        }
+
+        public AdaptiveTimeouts build() {
+            return new AdaptiveTimeouts(this);
+        }
+    }
+
+    private AdaptiveTimeouts(AdaptiveTimeoutsBuilder builder) {
+        this.window = builder.window;
+        this.minSamples = Math.min(builder.minSamples, builder.window);
+        this.timeoutPercentile = builder.timeoutPercentile;
+        this.factor = builder.factor;
+        this.floorMillis = builder.floorMillis;
+        this.ceilingMillis = Math.max(builder.floorMillis, builder.ceilingMillis);
+        this.hedgePercentile = builder.hedgePercentile;
+        this.maxHosts = builder.maxHosts;
+        this.hosts = CacheBuilder.newBuilder()
+        .maximumSize(maxHosts)
+        .build(new CacheLoader<String, Samples>() {
+            @Override
+            public Samples load(String host) {
+                return new Samples(window);
+            }
+        });
+    }
+
+    /**
+     * Ring buffer of one host's most recent fetch times.
+     */
+    private static class Samples {
+        private final long[] millis;
+        private int count = 0;
+        private int next = 0;
+
+        Samples(int window) {
+            millis = new long[window];
+        }
+
+        synchronized void add(long value) {
+            millis[next] = value;
+            next = (next + 1) % millis.length;
+            if (count < millis.length)
+                count++;
+        }
+
+        synchronized long[] sorted() {
+            long[] sorted = Arrays.copyOf(millis, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    /**
+     * Record how long a successful fetch of url took.
+     */
+    public void record(String url, long millis) {
+        samples(hostOf(url)).add(millis);
+    }
+
+    /**
+     * Record that a fetch of url timed out after being allowed millis.
+     */
+    public void recordTimeout(String url, long millis) {
+        samples(hostOf(url)).add(millis);
+    }
+
+    /**
+     * How long to allow the next fetch of url.
+     *
+     * @param fallbackMillis
+     *            the timeout to use while the host has too few samples.
+     */
+    public int timeoutMillis(String url, int fallbackMillis) {
+        long percentile = percentile(hostOf(url), timeoutPercentile);
+        if (percentile < 0)
+            return fallbackMillis;
+        long timeout = (long) Math.ceil(percentile * factor);
+        return (int) Math.max(floorMillis, Math.min(ceilingMillis, timeout));
+    }
+
+    /**
+     * How long a fetch of url may run before it is slower than is typical
+     * for its host, or -1 if the host has too few samples to say.
+     */
+    public long hedgeAfterMillis(String url) {
+        return percentile(hostOf(url), hedgePercentile);
+    }
+
+    /**
+     * The given percentile of a host's fetch times, or -1 if it has fewer
+     * than minSamples of them.
+     */
+    long percentile(String host, double p) {
+        Samples samples = hosts.getIfPresent(host);
+        if (samples == null)
+            return -1;
+        long[] sorted = samples.sorted();
+        if (sorted.length < minSamples || sorted.length == 0)
+            return -1;
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    private Samples samples(String host) {
+        return hosts.getUnchecked(host);
+    }
+
+    /**
+     * How many hosts currently have fetch times kept.
+     */
+    long hostCount() {
+        return hosts.size();
+    }
+
+    static String hostOf(String url) {
+        try {
+            String host = new URI(url.trim()).getHost();
+            if (host != null)
+                return host.toLowerCase(Locale.ROOT);
+        } catch (URISyntaxException e) {
+            // Fall through and key on the whole URL.
+        }
+        return url;
+    }
+
+}
@@ -0,0 +1,54 @@
+/** ========================================================================
+  * handytrowel: src/main/java/network/CompletionStrategy.java
+  * How long HTMLFetcher waits for a page to render before capturing it.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.network;
+
+/**
+ * When {@link HTMLFetcher} considers a page rendered enough to capture
+ * its source, from most to least patient.
+ *
+ * @author Asim Ihsan
+ */
+public enum CompletionStrategy {
+
+    /**
+     * Wait for the full page load, i.e. until every subresource has
+     * finished. Slow, but sees everything the page ever renders.
+     */
+    FULL_LOAD,
+
+    /**
+     * Capture once the DOM has been parsed, its size has stopped changing
+     * and the network has gone quiet, or the page has fully loaded,
+     * whichever comes first.
+     */
+    DOM_STABLE,
+
+    /**
+     * Capture as soon as the DOM has been parsed and holds enough
+     * paragraph text to look like an article, or the page has fully
+     * loaded, whichever comes first.
+     */
+    CONTENT_READY
+
+}
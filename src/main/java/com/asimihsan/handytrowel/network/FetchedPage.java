@@ -0,0 +1,243 @@
+/** ========================================================================
+  * handytrowel: src/main/java/network/FetchedPage.java
+  * Raw bytes of a fetched page together with the charset to decode them.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.network;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.xml.sax.InputSource;
+
+/**
+ * The HTML of a fetched page held as raw bytes plus the charset they are
+ * encoded in.
+ *
+ * Pages are kept as bytes from the fetcher all the way to the SAX parsers,
+ * so every parsing pass decodes straight off the same byte array instead of
+ * going through intermediate String copies.
+ *
+ * @author Asim Ihsan
+ */
+public class FetchedPage {
+
+    /**
+     * How many leading bytes to sniff for a charset declaration. This is the
+     * same limit the HTML5 encoding sniffing algorithm uses.
+     */
+    private static final int SNIFF_LENGTH = 1024;
+
+    /**
+     * Matches charset declarations in either form of meta tag, i.e.
+     * <meta charset="..."> and <meta http-equiv="Content-Type"
+     * content="text/html; charset=...">.
+     */
+    private static final Pattern charsetDeclaration = Pattern.compile(
+                "<meta[^>]+charset\\s*=\\s*[\"']?([a-zA-Z0-9_:.\\-]+)",
+                Pattern.CASE_INSENSITIVE);
+
+    private final String url;
+    private final byte[] content;
+    private final Charset charset;
+
+    /**
+     * True if the page was cut short because it was larger than the
+     * fetcher's byte limit.
+     */
+    private final boolean truncated;
+
+    /**
+     * Subresource requests blocked and allowed while rendering, or null
+     * if no {@link ResourceFilter} was used.
+     */
+    private ResourceStats resourceStats;
+
+    /**
+     * The condition that ended the wait for the page to render, and how
+     * long rendering took, if the page came from {@link HTMLFetcher}.
+     */
+    private RenderCompletion completion;
+    private long renderMillis;
+
+    /**
+     * How many bytes of script, style, SVG and comments were removed
+     * before parsing, if the page was pre-scanned.
+     */
+    private int strippedBytes;
+
+    public FetchedPage(String url, byte[] content, Charset charset) {
+        this(url, content, charset, false);
+    }
+
+    public FetchedPage(String url, byte[] content, Charset charset, boolean truncated) {
+        this.url = url;
+        this.content = content;
+        this.charset = charset;
+        this.truncated = truncated;
+    }
+
+    /**
+     * Wrap a page that is only available as a String, e.g. the page source
+     * returned by a WebDriver. The String is encoded exactly once as UTF-8.
+     */
+    public static FetchedPage fromString(String url, String pageSource) {
+        return new FetchedPage(url, pageSource.getBytes(StandardCharsets.UTF_8),
+                               StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Like {@link #fromString(String, String)} but stops encoding once
+     * maxBytes bytes have been produced, so an oversized page never gets a
+     * full size byte copy. A maxBytes of zero or less means no limit.
+     *
+     * Truncating in the middle of the markup is fine, the HTML parsers
+     * downstream close any elements left open.
+     */
+    public static FetchedPage fromString(String url, String pageSource, int maxBytes) {
+        // UTF-8 never needs more than three bytes per UTF-16 char.
+        if (maxBytes <= 0 || (long) pageSource.length() * 3 <= maxBytes)
+            return fromString(url, pageSource);
+
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                                 .onMalformedInput(CodingErrorAction.REPLACE)
+                                 .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer out = ByteBuffer.allocate(maxBytes);
+        CoderResult result = encoder.encode(CharBuffer.wrap(pageSource), out, true);
+        boolean truncated = result.isOverflow();
+        if (!truncated)
+            encoder.flush(out);
+        byte[] content = out.position() == out.capacity() ?
+                         out.array() : Arrays.copyOf(out.array(), out.position());
+        return new FetchedPage(url, content, StandardCharsets.UTF_8, truncated);
+    }
+
+    /**
+     * Wrap raw page bytes, detecting their charset from a byte order mark or
+     * a meta charset declaration near the start of the page. Falls back to
+     * UTF-8.
+     */
+    public static FetchedPage fromBytes(String url, byte[] content) {
+        return new FetchedPage(url, content, detectCharset(content));
+    }
+
+    static Charset detectCharset(byte[] content) {
+        if (content.length >= 3 && (content[0] & 0xFF) == 0xEF &&
+                (content[1] & 0xFF) == 0xBB && (content[2] & 0xFF) == 0xBF)
+            return StandardCharsets.UTF_8;
+        if (content.length >= 2 && (content[0] & 0xFF) == 0xFE && (content[1] & 0xFF) == 0xFF)
+            return StandardCharsets.UTF_16BE;
+        if (content.length >= 2 && (content[0] & 0xFF) == 0xFF && (content[1] & 0xFF) == 0xFE)
+            return StandardCharsets.UTF_16LE;
+
+        // Declarations are pure ASCII, so a single-byte decoding of the
+        // prefix is enough to find them whatever the real charset is.
+        String prefix = new String(content, 0, Math.min(content.length, SNIFF_LENGTH),
+                                   StandardCharsets.ISO_8859_1);
+        Matcher matcher = charsetDeclaration.matcher(prefix);
+        if (matcher.find()) {
+            try {
+                return Charset.forName(matcher.group(1));
+            } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                // fall through to the default
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * The raw page bytes. This is not a copy, do not modify it.
+     */
+    public byte[] getContent() {
+        return content;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public ResourceStats getResourceStats() {
+        return resourceStats;
+    }
+
+    public void setResourceStats(ResourceStats resourceStats) {
+        this.resourceStats = resourceStats;
+    }
+
+    public RenderCompletion getCompletion() {
+        return completion;
+    }
+
+    public void setCompletion(RenderCompletion completion) {
+        this.completion = completion;
+    }
+
+    public long getRenderMillis() {
+        return renderMillis;
+    }
+
+    public void setRenderMillis(long renderMillis) {
+        this.renderMillis = renderMillis;
+    }
+
+    public int getStrippedBytes() {
+        return strippedBytes;
+    }
+
+    public void setStrippedBytes(int strippedBytes) {
+        this.strippedBytes = strippedBytes;
+    }
+
+    public int length() {
+        return content.length;
+    }
+
+    /**
+     * Returns a new {@link InputSource} that decodes the page bytes as they
+     * are read. Each call returns an independent source over the same
+     * bytes, so call this once per parsing pass.
+     */
+    public InputSource toInputSource() {
+        InputSource is = new InputSource(new ByteArrayInputStream(content));
+        is.setEncoding(charset.name());
+        return is;
+    }
+
+}
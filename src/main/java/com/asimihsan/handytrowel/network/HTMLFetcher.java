@@ -23,15 +23,29 @@
 
 package com.asimihsan.handytrowel.network;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.phantomjs.PhantomJSDriver;
 import org.openqa.selenium.phantomjs.PhantomJSDriverService;
 import org.openqa.selenium.remote.DesiredCapabilities;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * Retrieve the HTML source code of a web page after also executing its
  * JavaScript payload.
@@ -45,18 +59,146 @@ public class HTMLFetcher {
      * could be taken up both by HTTP latency and rendering and JavaScript
      * execution time.
      *
+     * With adaptiveTimeouts this is only used for hosts it knows too little
+     * about.
+     *
      * The default value is 30 seconds.
      */
     private final int timeoutMillis;
 
+    /**
+     * Per-host timeouts derived from past fetch times. If null every fetch
+     * gets timeoutMillis.
+     *
+     * The default value is null.
+     */
+    private final AdaptiveTimeouts adaptiveTimeouts;
+
+    /**
+     * How many more times to try a fetch that times out or fails.
+     *
+     * The default value is zero.
+     */
+    private final int maxRetries;
+
+    /**
+     * How long to wait before the first retry. Each further retry waits
+     * twice as long, plus up to half as much again at random.
+     *
+     * The default value is 1 second.
+     */
+    private final int retryBackoffMillis;
+
+    /**
+     * If true, and adaptiveTimeouts knows the host, start a second attempt
+     * once the first has run longer than is typical for the host, and use
+     * whichever finishes first.
+     *
+     * The default value is false.
+     */
+    private final boolean hedge;
+
+    /**
+     * The most bytes of page source to keep. Larger pages are truncated
+     * and marked as such on the returned {@link FetchedPage}.
+     *
+     * The default value is zero, i.e. no limit.
+     */
+    private final int maxPageBytes;
+
+    /**
+     * Which subresource requests to block while the page renders. If null
+     * every request is allowed.
+     *
+     * The default value is null.
+     */
+    private final ResourceFilter resourceFilter;
+
+    /**
+     * When to consider the page rendered and capture its source.
+     *
+     * The default value is FULL_LOAD.
+     */
+    private final CompletionStrategy completionStrategy;
+
+    /**
+     * For DOM_STABLE, how long the DOM must stay unchanged and the network
+     * idle.
+     *
+     * The default value is 1 second.
+     */
+    private final int stableMillis;
+
+    /**
+     * For CONTENT_READY, how many characters of paragraph text make a page
+     * look like it holds its article.
+     *
+     * The default value is 1000 characters.
+     */
+    private final int minContentChars;
+
     public static class HTMLFetcherBuilder {
         private int timeoutMillis = 30 * 1000;
+        private AdaptiveTimeouts adaptiveTimeouts = null;
+        private int maxRetries = 0;
+        private int retryBackoffMillis = 1000;
+        private boolean hedge = false;
+        private int maxPageBytes = 0;
+        private ResourceFilter resourceFilter = null;
+        private CompletionStrategy completionStrategy = CompletionStrategy.FULL_LOAD;
+        private int stableMillis = 1000;
+        private int minContentChars = 1000;
 
         public HTMLFetcherBuilder timeoutMillis(int timeoutMillis) {
             this.timeoutMillis = timeoutMillis;
             return this;
         }
 
+        public HTMLFetcherBuilder adaptiveTimeouts(AdaptiveTimeouts adaptiveTimeouts) {
+            this.adaptiveTimeouts = adaptiveTimeouts;
+            return this;
+        }
+
+        public HTMLFetcherBuilder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        public HTMLFetcherBuilder retryBackoffMillis(int retryBackoffMillis) {
+            this.retryBackoffMillis = retryBackoffMillis;
+            return this;
+        }
+
+        public HTMLFetcherBuilder hedge(boolean hedge) {
+            this.hedge = hedge;
+            return this;
+        }
+
+        public HTMLFetcherBuilder maxPageBytes(int maxPageBytes) {
+            this.maxPageBytes = maxPageBytes;
+            return this;
+        }
+
+        public HTMLFetcherBuilder resourceFilter(ResourceFilter resourceFilter) {
+            this.resourceFilter = resourceFilter;
+            return this;
+        }
+
+        public HTMLFetcherBuilder completionStrategy(CompletionStrategy completionStrategy) {
+            this.completionStrategy = completionStrategy;
+            return this;
+        }
+
+        public HTMLFetcherBuilder stableMillis(int stableMillis) {
+            this.stableMillis = stableMillis;
+            return this;
+        }
+
+        public HTMLFetcherBuilder minContentChars(int minContentChars) {
+            this.minContentChars = minContentChars;
+            return this;
+        }
+
         public HTMLFetcher build() {
             return new HTMLFetcher(this);
         }
@@ -64,12 +206,171 @@ public class HTMLFetcher {
 
     private HTMLFetcher(HTMLFetcherBuilder builder) {
         this.timeoutMillis = builder.timeoutMillis;
+        this.adaptiveTimeouts = builder.adaptiveTimeouts;
+        this.maxRetries = builder.maxRetries;
+        this.retryBackoffMillis = builder.retryBackoffMillis;
+        this.hedge = builder.hedge;
+        this.maxPageBytes = builder.maxPageBytes;
+        this.resourceFilter = builder.resourceFilter;
+        this.completionStrategy = builder.completionStrategy;
+        this.stableMillis = builder.stableMillis;
+        this.minContentChars = builder.minContentChars;
     }
 
     private final Logger phantomJsLogger = Logger.getLogger(PhantomJSDriverService.class.getName());
 
+    /**
+     * Runs hedged attempts. Created on first use; its threads are daemons
+     * so an idle fetcher never holds the JVM open.
+     */
+    private ExecutorService hedgeExecutor;
+
+    private final AtomicInteger retries = new AtomicInteger();
+    private final AtomicInteger hedges = new AtomicInteger();
+
+    /**
+     * Fetch and render a page, returning its HTML as raw bytes ready to be
+     * handed to the SAX based extractors.
+     *
+     * A fetch that times out or fails is retried up to maxRetries times
+     * with exponential backoff; the last failure is rethrown.
+     */
+    public FetchedPage fetch(final String url) throws TimeoutException {
+        for (int attempt = 0;; attempt++) {
+            try {
+                return fetchHedged(url);
+            } catch (TimeoutException | WebDriverException e) {
+                if (attempt >= maxRetries || Thread.currentThread().isInterrupted())
+                    throw e;
+            }
+            retries.incrementAndGet();
+            long backoff = (long) retryBackoffMillis << Math.min(attempt, 16);
+            try {
+                Thread.sleep(backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TimeoutException("Interrupted before retrying " + url);
+            }
+        }
+    }
+
+    /**
+     * How many fetches have been retried so far.
+     */
+    public int getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * How many hedged second attempts have been started so far.
+     */
+    public int getHedges() {
+        return hedges.get();
+    }
+
+    private int timeoutFor(String url) {
+        if (adaptiveTimeouts == null)
+            return timeoutMillis;
+        return adaptiveTimeouts.timeoutMillis(url, timeoutMillis);
+    }
+
+    /**
+     * One attempt at a fetch, plus a hedged second attempt if the first
+     * runs long. Whichever succeeds first wins and the other is cancelled.
+     */
+    private FetchedPage fetchHedged(final String url) throws TimeoutException {
+        final int timeout = timeoutFor(url);
+        final long hedgeAfter = hedge && adaptiveTimeouts != null ? adaptiveTimeouts.hedgeAfterMillis(url) : -1;
+        if (hedgeAfter < 0 || hedgeAfter >= timeout)
+            return fetchOnce(url, timeout);
+
+        CompletionService<FetchedPage> completion = new ExecutorCompletionService<>(hedgeExecutor());
+        List<Future<FetchedPage>> attempts = new ArrayList<>();
+        try {
+            attempts.add(completion.submit(attempt(url, timeout)));
+            Future<FetchedPage> done = completion.poll(hedgeAfter, TimeUnit.MILLISECONDS);
+            if (done == null) {
+                hedges.incrementAndGet();
+                attempts.add(completion.submit(attempt(url, (int) (timeout - hedgeAfter))));
+            }
+            ExecutionException last = null;
+            for (int i = 0; i < attempts.size(); i++) {
+                Future<FetchedPage> future = (i == 0 && done != null) ? done : completion.take();
+                try {
+                    return future.get();
+                } catch (ExecutionException e) {
+                    last = e;
+                }
+            }
+            Throwable cause = last.getCause();
+            if (cause instanceof TimeoutException)
+                throw (TimeoutException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new WebDriverException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("Interrupted while fetching " + url);
+        } finally {
+            for (Future<FetchedPage> attempt : attempts)
+                attempt.cancel(true);
+        }
+    }
+
+    private Callable<FetchedPage> attempt(final String url, final int timeout) {
+        return new Callable<FetchedPage>() {
+            @Override
+            public FetchedPage call() throws TimeoutException {
+                return fetchOnce(url, timeout);
+            }
+        };
+    }
+
+    private synchronized ExecutorService hedgeExecutor() {
+        if (hedgeExecutor == null) {
+            hedgeExecutor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hedged-fetch-%d").build());
+        }
+        return hedgeExecutor;
+    }
+
+    private FetchedPage fetchOnce(final String url, final int timeout) throws TimeoutException {
+        final PhantomJSDriver driver = newDriver();
+        try {
+            final long start = System.currentTimeMillis();
+            final RenderedPage rendered;
+            try {
+                rendered = load(driver, url, timeout);
+            } catch (TimeoutException e) {
+                // A cancelled hedge attempt says nothing about the host.
+                if (adaptiveTimeouts != null && !Thread.currentThread().isInterrupted())
+                    adaptiveTimeouts.recordTimeout(url, timeout);
+                throw e;
+            }
+            final long renderMillis = System.currentTimeMillis() - start;
+            if (adaptiveTimeouts != null)
+                adaptiveTimeouts.record(url, renderMillis);
+            FetchedPage page = FetchedPage.fromString(url, rendered.pageSource, maxPageBytes);
+            page.setCompletion(rendered.completion);
+            page.setRenderMillis(renderMillis);
+            if (resourceFilter != null)
+                page.setResourceStats(resourceFilter.getStats(driver));
+            return page;
+        } finally {
+            driver.quit();
+        }
+    }
+
     public String getPageSource(final String url) throws TimeoutException {
+        final PhantomJSDriver driver = newDriver();
+        try {
+            return load(driver, url, timeoutMillis).pageSource;
+        } finally {
+            driver.quit();
+        }
+    }
 
+    private PhantomJSDriver newDriver() {
         // Make the Selenium WebDriver logs be quiet
         phantomJsLogger.setLevel(Level.OFF);
 
@@ -82,32 +383,53 @@ public class HTMLFetcher {
             new String[] {"--ignore-ssl-errors=yes", "--load-images=no",
                           "--disk-cache=true", "--max-disk-cache-size=size=51200"
                          });
-        final WebDriver driver = new PhantomJSDriver(desiredCapabilities);
+        return new PhantomJSDriver(desiredCapabilities);
+    }
+
+    /**
+     * Page source captured once rendering completed, and what completed it.
+     */
+    private static class RenderedPage {
+        final String pageSource;
+        final RenderCompletion completion;
+
+        RenderedPage(String pageSource, RenderCompletion completion) {
+            this.pageSource = pageSource;
+            this.completion = completion;
+        }
+    }
+
+    private RenderedPage load(final PhantomJSDriver driver, final String url, final int timeoutMillis)
+    throws TimeoutException {
+        if (resourceFilter != null)
+            resourceFilter.install(driver, url);
+
+        if (completionStrategy != CompletionStrategy.FULL_LOAD) {
+            RenderWaiter waiter = new RenderWaiter(completionStrategy, stableMillis, minContentChars);
+            RenderCompletion completion = waiter.await(driver, url, timeoutMillis);
+            return new RenderedPage(waiter.getPageSource(driver), completion);
+        }
 
         // doesn't work, keep as reference.
         //driver.manage().timeouts().implicitlyWait(10, TimeUnit.SECONDS);
-        try {
-            Thread t = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    driver.get(url);
-                }
-            });
-            t.start();
-            try {
-                t.join(timeoutMillis);
-            } catch (InterruptedException e) {
-            }
-            if (t.isAlive()) {
-                System.out.println("Timeout for HTTP GET to: " + url);
-                t.interrupt();
-                throw new TimeoutException();
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                driver.get(url);
             }
-            String pageSource = driver.getPageSource();
-            return pageSource;
-        } finally {
-            driver.quit();
+        });
+        t.start();
+        try {
+            t.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (t.isAlive()) {
+            System.err.println("Timeout for HTTP GET to: " + url);
+            t.interrupt();
+            throw new TimeoutException();
         }
+        return new RenderedPage(driver.getPageSource(), RenderCompletion.LOAD);
     }
 
 }
@@ -0,0 +1,57 @@
+/** ========================================================================
+  * handytrowel: src/main/java/network/RenderCompletion.java
+  * Which condition ended the wait for a page to render.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.network;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * The condition that ended {@link HTMLFetcher}'s wait for a page, see
+ * {@link CompletionStrategy}.
+ *
+ * @author Asim Ihsan
+ */
+public enum RenderCompletion {
+
+    /** The page finished loading along with all its subresources. */
+    LOAD("load"),
+
+    /** The DOM stopped changing and the network went quiet. */
+    DOM_STABLE("domStable"),
+
+    /** The DOM held enough paragraph text to look like an article. */
+    CONTENT_READY("contentReady");
+
+    private final String name;
+
+    private RenderCompletion(String name) {
+        this.name = name;
+    }
+
+    @JsonValue
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
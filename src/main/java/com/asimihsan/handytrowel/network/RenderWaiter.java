@@ -0,0 +1,151 @@
+/** ========================================================================
+  * handytrowel: src/main/java/network/RenderWaiter.java
+  * Poll a rendering page until it looks complete enough to capture.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.network;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import org.openqa.selenium.phantomjs.PhantomJSDriver;
+
+import com.google.common.io.Resources;
+
+/**
+ * Navigate PhantomJS to a page without blocking on the full page load,
+ * then poll the DOM and the network until the page is complete according
+ * to a {@link CompletionStrategy}.
+ *
+ * Commands that go through WebDriver's page load wait would block until
+ * the load finishes, so navigation, polling and capturing the source all
+ * go through PhantomJS directly.
+ *
+ * @author Asim Ihsan
+ */
+class RenderWaiter {
+
+    private static final int POLL_INTERVAL_MILLIS = 100;
+
+    private static final String MONITOR_SCRIPT = readScript("/network/render_monitor.js");
+    private static final String STATE_SCRIPT = readScript("/network/render_state.js");
+
+    private final CompletionStrategy strategy;
+
+    /**
+     * How long the DOM size must stay the same, and the network idle, for
+     * the DOM to count as stable.
+     */
+    private final int stableMillis;
+
+    /**
+     * How many characters of paragraph text make the page look like it
+     * holds its article.
+     */
+    private final int minContentChars;
+
+    RenderWaiter(CompletionStrategy strategy, int stableMillis, int minContentChars) {
+        this.strategy = strategy;
+        this.stableMillis = stableMillis;
+        this.minContentChars = minContentChars;
+    }
+
+    private static String readScript(String path) {
+        try {
+            return Resources.toString(RenderWaiter.class.getResource(path), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read " + path, e);
+        }
+    }
+
+    /**
+     * Start loading url and wait until it is complete.
+     *
+     * @return the condition that ended the wait.
+     * @throws TimeoutException
+     *             if the page is not complete within timeoutMillis.
+     */
+    RenderCompletion await(final PhantomJSDriver driver, final String url, final int timeoutMillis)
+    throws TimeoutException {
+        driver.executePhantomJS(MONITOR_SCRIPT);
+        // Without a callback page.open returns immediately.
+        driver.executePhantomJS("this.open(arguments[0]);", url);
+
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        long lastElements = -1;
+        long lastTextLength = -1;
+        long stableSince = System.currentTimeMillis();
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TimeoutException("Interrupted while waiting for " + url);
+            }
+            final long now = System.currentTimeMillis();
+            final Map<?, ?> state = (Map<?, ?>) driver.executePhantomJS(STATE_SCRIPT);
+            final String readyState = String.valueOf(state.get("readyState"));
+            if ("about:blank".equals(state.get("url")) || "loading".equals(readyState)) {
+                // Still on the initial blank page, or the DOM is still
+                // being parsed.
+                stableSince = now;
+                continue;
+            }
+
+            final long inflight = toLong(state.get("inflight"));
+            if ("complete".equals(readyState) && inflight <= 0)
+                return RenderCompletion.LOAD;
+
+            if (strategy == CompletionStrategy.CONTENT_READY &&
+                    toLong(state.get("paragraphChars")) >= minContentChars)
+                return RenderCompletion.CONTENT_READY;
+
+            final long elements = toLong(state.get("elements"));
+            final long textLength = toLong(state.get("textLength"));
+            if (elements != lastElements || textLength != lastTextLength) {
+                lastElements = elements;
+                lastTextLength = textLength;
+                stableSince = now;
+                continue;
+            }
+            final boolean networkQuiet = inflight <= 0 || toLong(state.get("idleMillis")) >= stableMillis;
+            if (strategy == CompletionStrategy.DOM_STABLE && networkQuiet &&
+                    now - stableSince >= stableMillis)
+                return RenderCompletion.DOM_STABLE;
+        }
+        System.err.println("Timeout for HTTP GET to: " + url);
+        throw new TimeoutException();
+    }
+
+    /**
+     * The page's current DOM serialized as HTML.
+     */
+    String getPageSource(final PhantomJSDriver driver) {
+        return (String) driver.executePhantomJS("return this.content;");
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+}
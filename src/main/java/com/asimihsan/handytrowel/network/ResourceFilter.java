@@ -0,0 +1,175 @@
+/** ========================================================================
+  * handytrowel: src/main/java/network/ResourceFilter.java
+  * Block subresource requests made by the headless renderer.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.network;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.openqa.selenium.phantomjs.PhantomJSDriver;
+
+import com.asimihsan.handytrowel.nlp.WordReader;
+import com.google.common.io.Resources;
+
+/**
+ * Decide which of a page's subresource requests PhantomJS is allowed to
+ * make. Stylesheets, web fonts, ads, analytics and social widgets dominate
+ * page load time but contribute nothing to the article text.
+ *
+ * Requests can be blocked by resource type, by domain (subdomains
+ * included), and by resource type only when served from a different site
+ * than the page itself. Navigations of the page itself, including
+ * redirects to another site such as from a link shortener, are never
+ * blocked, and "the page's site" is the one it ends up on. The filtering
+ * runs inside PhantomJS, see
+ * resource_filter.js; this class just configures it and reads back how
+ * many requests were blocked and allowed.
+ *
+ * @author Asim Ihsan
+ */
+public class ResourceFilter {
+
+    /**
+     * Resource types as guessed from a request's URL extension and Accept
+     * header. PhantomJS does not tell us what a request is for.
+     */
+    public enum ResourceType {
+        STYLESHEET, FONT, IMAGE, MEDIA, SCRIPT, OTHER;
+
+        String jsName() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+    private static final String FILTER_SCRIPT_PATH = "/network/resource_filter.js";
+    private static final String DEFAULT_BLOCKED_DOMAINS_PATH = "/network/blocked_domains.txt";
+
+    private final Set<ResourceType> blockedTypes;
+    private final Set<ResourceType> blockedThirdPartyTypes;
+    private final List<String> blockedDomains;
+
+    public static class ResourceFilterBuilder {
+        private Set<ResourceType> blockedTypes = EnumSet.noneOf(ResourceType.class);
+        private Set<ResourceType> blockedThirdPartyTypes = EnumSet.noneOf(ResourceType.class);
+        private List<String> blockedDomains = new ArrayList<>();
+
+        /**
+         * Block every request of these types.
+         */
+        public ResourceFilterBuilder blockTypes(Collection<ResourceType> types) {
+            this.blockedTypes.addAll(types);
+            return this;
+        }
+
+        /**
+         * Block requests of these types when they go to a different site
+         * than the page being fetched.
+         */
+        public ResourceFilterBuilder blockThirdPartyTypes(Collection<ResourceType> types) {
+            this.blockedThirdPartyTypes.addAll(types);
+            return this;
+        }
+
+        /**
+         * Block every request to these domains and their subdomains.
+         */
+        public ResourceFilterBuilder blockDomains(Collection<String> domains) {
+            for (String domain : domains)
+                this.blockedDomains.add(domain.toLowerCase(Locale.ENGLISH));
+            return this;
+        }
+
+        /**
+         * Use the default blocklist, i.e. stylesheets, fonts, images and
+         * media from anywhere, third party frames and XHR, and every
+         * domain in blocked_domains.txt.
+         */
+        public ResourceFilterBuilder defaults() throws IOException {
+            blockTypes(EnumSet.of(ResourceType.STYLESHEET, ResourceType.FONT,
+                                  ResourceType.IMAGE, ResourceType.MEDIA));
+            blockThirdPartyTypes(EnumSet.of(ResourceType.OTHER));
+            blockDomains(WordReader.wordReaderWithResourcePath(DEFAULT_BLOCKED_DOMAINS_PATH).getWords());
+            return this;
+        }
+
+        public ResourceFilter build() throws IOException {
+            return new ResourceFilter(this);
+        }
+    }
+
+    private ResourceFilter(ResourceFilterBuilder builder) throws IOException {
+        this.blockedTypes = EnumSet.copyOf(builder.blockedTypes);
+        this.blockedThirdPartyTypes = EnumSet.copyOf(builder.blockedThirdPartyTypes);
+        this.blockedDomains = new ArrayList<>(builder.blockedDomains);
+        this.filterScript = Resources.toString(
+                                ResourceFilter.class.getResource(FILTER_SCRIPT_PATH),
+                                StandardCharsets.UTF_8);
+    }
+
+    private final String filterScript;
+
+    /**
+     * Install the filter into the driver's page. Must be called before the
+     * driver loads pageUrl.
+     */
+    public void install(PhantomJSDriver driver, String pageUrl) {
+        Map<String, Object> config = new HashMap<>();
+        config.put("pageUrl", pageUrl);
+        config.put("blockedTypes", jsNames(blockedTypes));
+        config.put("blockedThirdPartyTypes", jsNames(blockedThirdPartyTypes));
+        config.put("blockedDomains", blockedDomains);
+        driver.executePhantomJS(filterScript, config);
+    }
+
+    /**
+     * Read back how many requests the filter has blocked and allowed since
+     * it was installed.
+     */
+    public ResourceStats getStats(PhantomJSDriver driver) {
+        Object result = driver.executePhantomJS("return this.handytrowelResourceStats;");
+        if (!(result instanceof Map))
+            return new ResourceStats(0, 0);
+        Map<?, ?> stats = (Map<?, ?>) result;
+        return new ResourceStats(toInt(stats.get("allowed")), toInt(stats.get("blocked")));
+    }
+
+    private static int toInt(Object value) {
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+
+    private static List<String> jsNames(Set<ResourceType> types) {
+        List<String> names = new ArrayList<>();
+        for (ResourceType type : types)
+            names.add(type.jsName());
+        return names;
+    }
+
+}
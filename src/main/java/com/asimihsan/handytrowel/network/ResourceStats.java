@@ -0,0 +1,50 @@
+/** ========================================================================
+  * handytrowel: src/main/java/network/ResourceStats.java
+  * Counts of subresource requests a page made and had blocked.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.network;
+
+/**
+ * How many subresource requests {@link ResourceFilter} allowed and blocked
+ * while a page was loading.
+ *
+ * @author Asim Ihsan
+ */
+public class ResourceStats {
+
+    private final int allowed;
+    private final int blocked;
+
+    public ResourceStats(int allowed, int blocked) {
+        this.allowed = allowed;
+        this.blocked = blocked;
+    }
+
+    public int getAllowed() {
+        return allowed;
+    }
+
+    public int getBlocked() {
+        return blocked;
+    }
+
+}
@@ -0,0 +1,284 @@
+/** ========================================================================
+  * handytrowel: src/main/java/nlp/DocumentFrequencyStore.java
+  * Corpus-wide document frequencies of stems, for TF-IDF keywords.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.nlp;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * How many documents of the corpus each stem appears in, used to rank a
+ * document's stems by TF-IDF.
+ *
+ * Counts are split over a fixed number of stripes by stem hash, each
+ * stripe a plain map behind its own lock. A document's stems are grouped
+ * by stripe first, so adding a document takes each stripe lock at most
+ * once, and analysis threads adding different documents rarely wait on
+ * each other.
+ *
+ * The store can be persisted to a gzipped text file, one "stem TAB count"
+ * line per stem, so frequencies keep accumulating across batch runs. It is
+ * saved every saveEvery documents and on close.
+ *
+ * @author Asim Ihsan
+ */
+public class DocumentFrequencyStore {
+
+    private static final String HEADER = "handytrowel-df 1";
+
+    private final File file;
+    private final int saveEvery;
+
+    private final Stripe[] stripes;
+    private final AtomicLong documentCount = new AtomicLong();
+
+    /**
+     * Serializes saves. Adding documents never waits on this.
+     */
+    private final Object saveLock = new Object();
+
+    private static class Stripe {
+        final Map<String, int[]> counts = new HashMap<>();
+    }
+
+    public static class DocumentFrequencyStoreBuilder {
+        private File file = null;
+        private int stripes = 64;
+        private int saveEvery = 10 * 1000;
+
+        /**
+         * Load frequencies from, and save them to, this file. Without a
+         * file the store is in memory only.
+         */
+        public DocumentFrequencyStoreBuilder file(File file) {
+            this.file = file;
+            return this;
+        }
+
+        public DocumentFrequencyStoreBuilder stripes(int stripes) {
+            this.stripes = stripes;
+            return this;
+        }
+
+        public DocumentFrequencyStoreBuilder saveEvery(int saveEvery) {
+            this.saveEvery = saveEvery;
+            return this;
+        }
+
+        public DocumentFrequencyStore build() throws IOException {
+            return new DocumentFrequencyStore(this);
+        }
+    }
+
+    private DocumentFrequencyStore(DocumentFrequencyStoreBuilder builder) throws IOException {
+        this.file = builder.file;
+        this.saveEvery = builder.saveEvery;
+        this.stripes = new Stripe[builder.stripes];
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new Stripe();
+        if (file != null && file.exists())
+            load();
+    }
+
+    private Stripe stripeFor(String stem) {
+        return stripes[(stem.hashCode() & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    /**
+     * Count a document's stems, each distinct stem once.
+     */
+    public void addDocument(Collection<String> stems) throws IOException {
+        List<List<String>> byStripe = new ArrayList<>(stripes.length);
+        for (int i = 0; i < stripes.length; i++)
+            byStripe.add(null);
+        for (String stem : new HashSet<>(stems)) {
+            int i = (stem.hashCode() & Integer.MAX_VALUE) % stripes.length;
+            if (byStripe.get(i) == null)
+                byStripe.set(i, new ArrayList<String>());
+            byStripe.get(i).add(stem);
+        }
+        for (int i = 0; i < stripes.length; i++) {
+            List<String> group = byStripe.get(i);
+            if (group == null)
+                continue;
+            Stripe stripe = stripes[i];
+            synchronized (stripe) {
+                for (String stem : group) {
+                    int[] count = stripe.counts.get(stem);
+                    if (count == null)
+                        stripe.counts.put(stem, new int[] {1});
+                    else
+                        count[0]++;
+                }
+            }
+        }
+        long documents = documentCount.incrementAndGet();
+        if (file != null && saveEvery > 0 && documents % saveEvery == 0)
+            save();
+    }
+
+    public long getDocumentCount() {
+        return documentCount.get();
+    }
+
+    public int getDocumentFrequency(String stem) {
+        Stripe stripe = stripeFor(stem);
+        synchronized (stripe) {
+            int[] count = stripe.counts.get(stem);
+            return count == null ? 0 : count[0];
+        }
+    }
+
+    /**
+     * Smoothed inverse document frequency, always positive.
+     */
+    public double inverseDocumentFrequency(String stem) {
+        return Math.log((double) (documentCount.get() + 1) / (getDocumentFrequency(stem) + 1)) + 1.0;
+    }
+
+    /**
+     * The k stems of a document with the highest TF-IDF, best first. The
+     * document should already have been added, so its own stems count
+     * towards their frequencies.
+     */
+    public List<String> topKeywords(List<String> stems, int k) {
+        if (k <= 0)
+            return new ArrayList<>();
+        Map<String, int[]> termFrequencies = new HashMap<>();
+        for (String stem : stems) {
+            int[] count = termFrequencies.get(stem);
+            if (count == null)
+                termFrequencies.put(stem, new int[] {1});
+            else
+                count[0]++;
+        }
+
+        // Min-heap of the best k so far, worst at the head.
+        PriorityQueue<Keyword> best = new PriorityQueue<>(k + 1);
+        for (Map.Entry<String, int[]> entry : termFrequencies.entrySet()) {
+            double score = entry.getValue()[0] * inverseDocumentFrequency(entry.getKey());
+            best.add(new Keyword(entry.getKey(), score));
+            if (best.size() > k)
+                best.poll();
+        }
+        List<String> keywords = new ArrayList<>(best.size());
+        while (!best.isEmpty())
+            keywords.add(best.poll().stem);
+        Collections.reverse(keywords);
+        return keywords;
+    }
+
+    private static class Keyword implements Comparable<Keyword> {
+        final String stem;
+        final double score;
+
+        Keyword(String stem, double score) {
+            this.stem = stem;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Keyword other) {
+            int byScore = Double.compare(score, other.score);
+            // Break ties so the output doesn't depend on hash order.
+            return byScore != 0 ? byScore : other.stem.compareTo(stem);
+        }
+    }
+
+    private void load() throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        new GZIPInputStream(Files.newInputStream(file.toPath())), StandardCharsets.UTF_8))) {
+            String header = reader.readLine();
+            if (!HEADER.equals(header))
+                throw new IOException("Not a document frequency file: " + file);
+            documentCount.set(Long.parseLong(reader.readLine()));
+            String line = null;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.lastIndexOf('\t');
+                String stem = line.substring(0, tab);
+                stripeFor(stem).counts.put(stem, new int[] {Integer.parseInt(line.substring(tab + 1))});
+            }
+        }
+    }
+
+    /**
+     * Write the store to its file and force it to disk. The file is
+     * replaced atomically, so a crash mid-save leaves the previous version
+     * intact.
+     */
+    public void save() throws IOException {
+        if (file == null)
+            return;
+        synchronized (saveLock) {
+            File temp = new File(file.getPath() + ".tmp");
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                            new GZIPOutputStream(Files.newOutputStream(temp.toPath())), StandardCharsets.UTF_8))) {
+                writer.write(HEADER);
+                writer.write('\n');
+                writer.write(Long.toString(documentCount.get()));
+                writer.write('\n');
+                for (Stripe stripe : stripes) {
+                    synchronized (stripe) {
+                        for (Map.Entry<String, int[]> entry : stripe.counts.entrySet()) {
+                            writer.write(entry.getKey());
+                            writer.write('\t');
+                            writer.write(Integer.toString(entry.getValue()[0]));
+                            writer.write('\n');
+                        }
+                    }
+                }
+            }
+            try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    public void close() throws IOException {
+        save();
+    }
+
+}
@@ -0,0 +1,313 @@
+/** ========================================================================
+  * handytrowel: src/main/java/nlp/LanguageIdentifier.java
+  * Identify the language of a text from its character trigrams.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.nlp;
+
+import java.io.IOException;
+import java.lang.Character.UnicodeScript;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Guess the language of a text before spending any time analyzing it.
+ *
+ * Texts mostly in a non-Latin script are identified by script alone.
+ * Latin script texts are scored against a character trigram profile of
+ * each of the {@link Languages#SUPPORTED} languages, built from the same
+ * common word lists used as their stopwords. Function words make up a
+ * large share of any running text, so their trigrams are a strong signal.
+ *
+ * The English list is ranked by frequency and far longer than the others,
+ * which are whole stopword lists in alphabetical order, so only its most
+ * common words are used, as many as the longest other list. That keeps
+ * profiles of comparable size, so no language is favoured by having a
+ * bigger one.
+ *
+ * A text is reported as {@link #UNKNOWN} rather than guessed when the best
+ * language doesn't beat the runner-up by a clear margin per trigram, or
+ * its profile contains too few of the text's trigrams, as for text in a
+ * language without a profile.
+ *
+ * Only the first few thousand characters are looked at, with one hash
+ * table probe per trigram and two small per-language arrays of totals, so
+ * identifying a document takes microseconds. Instances are immutable and
+ * thread-safe.
+ *
+ * @author Asim Ihsan
+ */
+public class LanguageIdentifier {
+
+    public static final String UNKNOWN = "unknown";
+
+    /**
+     * How many characters at the start of a text to look at.
+     */
+    private static final int SAMPLE_CHARS = 2048;
+
+    /**
+     * Below this many trigrams there is too little text to tell.
+     */
+    private static final int MIN_TRIGRAMS = 12;
+
+    /**
+     * Additive smoothing for trigrams a language's profile never saw.
+     */
+    private static final double SMOOTHING = 0.5;
+
+    /**
+     * How much higher, per trigram, the best language's score must be than
+     * the runner-up's for the text to be identified.
+     */
+    private static final double MIN_MARGIN = 0.05;
+
+    /**
+     * The least share of the text's trigrams the best language's profile
+     * must contain for the text to be identified. Text in a language
+     * without a profile mostly misses them all.
+     */
+    private static final double MIN_COVERAGE = 0.2;
+
+    /**
+     * Languages guessed from the script alone.
+     */
+    private static final Map<UnicodeScript, String> SCRIPT_LANGUAGES = new EnumMap<>(UnicodeScript.class);
+    static {
+        SCRIPT_LANGUAGES.put(UnicodeScript.CYRILLIC, "ru");
+        SCRIPT_LANGUAGES.put(UnicodeScript.GREEK, "el");
+        SCRIPT_LANGUAGES.put(UnicodeScript.ARABIC, "ar");
+        SCRIPT_LANGUAGES.put(UnicodeScript.HEBREW, "he");
+        SCRIPT_LANGUAGES.put(UnicodeScript.HAN, "zh");
+        SCRIPT_LANGUAGES.put(UnicodeScript.HIRAGANA, "ja");
+        SCRIPT_LANGUAGES.put(UnicodeScript.KATAKANA, "ja");
+        SCRIPT_LANGUAGES.put(UnicodeScript.HANGUL, "ko");
+        SCRIPT_LANGUAGES.put(UnicodeScript.THAI, "th");
+        SCRIPT_LANGUAGES.put(UnicodeScript.DEVANAGARI, "hi");
+    }
+
+    private final String[] languages;
+
+    /**
+     * Open addressing hash table from packed trigram to its row in scores.
+     * A key of zero marks an empty slot; no real trigram packs to zero
+     * because at most two of its chars are spaces.
+     */
+    private final long[] keys;
+    private final int[] rows;
+    private final int mask;
+
+    /**
+     * Log probability of each known trigram in each language, one row of
+     * languages.length entries per trigram.
+     */
+    private final float[] scores;
+
+    /**
+     * Log probability of a trigram unseen in a language's profile. The
+     * same for every language, so unseen trigrams never tip the balance.
+     */
+    private final float unseenScore;
+
+    public LanguageIdentifier() throws IOException {
+        this(Languages.SUPPORTED);
+    }
+
+    public LanguageIdentifier(List<String> languages) throws IOException {
+        this.languages = languages.toArray(new String[languages.size()]);
+        final int n = this.languages.length;
+
+        List<List<String>> wordLists = new ArrayList<>();
+        int profileWords = 0;
+        for (String language : this.languages) {
+            List<String> words = WordReader.wordReaderWithResourcePath(Languages.wordListPath(language)).getWords();
+            wordLists.add(words);
+            if (!Languages.ENGLISH.equals(language))
+                profileWords = Math.max(profileWords, words.size());
+        }
+
+        List<Map<Long, Integer>> counts = new ArrayList<>();
+        Map<Long, Integer> trigramRows = new HashMap<>();
+        for (int l = 0; l < n; l++) {
+            Map<Long, Integer> languageCounts = new HashMap<>();
+            List<String> words = wordLists.get(l);
+            if (Languages.ENGLISH.equals(this.languages[l]) && profileWords > 0)
+                words = words.subList(0, Math.min(words.size(), profileWords));
+            for (String word : words) {
+                String padded = " " + word.toLowerCase() + " ";
+                for (int i = 0; i + 3 <= padded.length(); i++) {
+                    long key = pack(padded.charAt(i), padded.charAt(i + 1), padded.charAt(i + 2));
+                    Integer count = languageCounts.get(key);
+                    languageCounts.put(key, count == null ? 1 : count + 1);
+                    if (!trigramRows.containsKey(key))
+                        trigramRows.put(key, trigramRows.size());
+                }
+            }
+            counts.add(languageCounts);
+        }
+
+        final int vocabulary = trigramRows.size();
+        this.scores = new float[vocabulary * n];
+        double lowestUnseen = 0;
+        for (int l = 0; l < n; l++) {
+            Map<Long, Integer> languageCounts = counts.get(l);
+            long total = 0;
+            for (int count : languageCounts.values())
+                total += count;
+            double denominator = total + SMOOTHING * (vocabulary + 1);
+            lowestUnseen = Math.min(lowestUnseen, Math.log(SMOOTHING / denominator));
+            for (Map.Entry<Long, Integer> entry : trigramRows.entrySet()) {
+                Integer count = languageCounts.get(entry.getKey());
+                scores[entry.getValue() * n + l] = count == null ? Float.NaN :
+                                                   (float) Math.log((count + SMOOTHING) / denominator);
+            }
+        }
+        this.unseenScore = (float) lowestUnseen;
+        for (int i = 0; i < scores.length; i++) {
+            if (Float.isNaN(scores[i]))
+                scores[i] = unseenScore;
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(16, vocabulary * 2)) << 1;
+        this.keys = new long[capacity];
+        this.rows = new int[capacity];
+        this.mask = capacity - 1;
+        for (Map.Entry<Long, Integer> entry : trigramRows.entrySet()) {
+            int slot = slot(entry.getKey());
+            while (keys[slot] != 0)
+                slot = (slot + 1) & mask;
+            keys[slot] = entry.getKey();
+            rows[slot] = entry.getValue();
+        }
+    }
+
+    private static long pack(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & mask;
+    }
+
+    private int row(long key) {
+        int slot = slot(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key)
+                return rows[slot];
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the ISO 639-1 code of the text's language, or
+     * {@link #UNKNOWN} if there is too little text to tell or no language
+     * clearly fits best.
+     */
+    public String identify(CharSequence text) {
+        final int n = languages.length;
+        final int length = Math.min(text.length(), SAMPLE_CHARS);
+
+        // Which script dominates the sample?
+        int latinLetters = 0;
+        int otherLetters = 0;
+        UnicodeScript otherScript = null;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetter(c))
+                continue;
+            // Everything below IPA Extensions is Latin.
+            if (c < 0x0250) {
+                latinLetters++;
+            } else {
+                UnicodeScript script = UnicodeScript.of(c);
+                if (script == UnicodeScript.LATIN) {
+                    latinLetters++;
+                } else {
+                    otherLetters++;
+                    if (otherScript == null || script == UnicodeScript.HIRAGANA ||
+                            script == UnicodeScript.KATAKANA)
+                        otherScript = script;
+                }
+            }
+        }
+        if (otherLetters > latinLetters) {
+            String language = SCRIPT_LANGUAGES.get(otherScript);
+            return language == null ? UNKNOWN : language;
+        }
+
+        // Score the Latin script trigrams. Runs of non-letters collapse
+        // into a single space, as word boundaries in the profiles.
+        double[] totals = new double[n];
+        int[] hits = new int[n];
+        int trigrams = 0;
+        char a = ' ';
+        char b = ' ';
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? text.charAt(i) : ' ';
+            c = Character.isLetter(c) ? Character.toLowerCase(c) : ' ';
+            if (c == ' ' && b == ' ')
+                continue;
+            if (!(a == ' ' && b == ' ')) {
+                int row = row(pack(a, b, c));
+                if (row >= 0) {
+                    int offset = row * n;
+                    for (int l = 0; l < n; l++) {
+                        totals[l] += scores[offset + l] - unseenScore;
+                        if (scores[offset + l] != unseenScore)
+                            hits[l]++;
+                    }
+                }
+                trigrams++;
+            }
+            a = b;
+            b = c;
+        }
+        if (trigrams < MIN_TRIGRAMS)
+            return UNKNOWN;
+
+        int best = 0;
+        int second = -1;
+        for (int l = 1; l < n; l++) {
+            if (totals[l] > totals[best]) {
+                second = best;
+                best = l;
+            } else if (second < 0 || totals[l] > totals[second]) {
+                second = l;
+            }
+        }
+        if (second >= 0 && (totals[best] - totals[second]) / trigrams < MIN_MARGIN)
+            return UNKNOWN;
+        if ((double) hits[best] / trigrams < MIN_COVERAGE)
+            return UNKNOWN;
+        return languages[best];
+    }
+
+    public List<String> getLanguages() {
+        return Arrays.asList(languages);
+    }
+
+}
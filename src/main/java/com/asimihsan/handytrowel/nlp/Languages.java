@@ -0,0 +1,91 @@
+/** ========================================================================
+  * handytrowel: src/main/java/nlp/Languages.java
+  * Per-language word lists and stemmers for text analysis.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.nlp;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.tartarus.snowball.SnowballStemmer;
+import org.tartarus.snowball.ext.dutchStemmer;
+import org.tartarus.snowball.ext.englishStemmer;
+import org.tartarus.snowball.ext.frenchStemmer;
+import org.tartarus.snowball.ext.germanStemmer;
+import org.tartarus.snowball.ext.italianStemmer;
+import org.tartarus.snowball.ext.portugueseStemmer;
+import org.tartarus.snowball.ext.spanishStemmer;
+
+/**
+ * The languages {@link TextAnalyzer} can analyze, keyed by ISO 639-1
+ * code, each with a stopword list and a Snowball stemmer.
+ *
+ * @author Asim Ihsan
+ */
+public final class Languages {
+
+    public static final String ENGLISH = "en";
+
+    /**
+     * Every language with a word list and a stemmer.
+     */
+    public static final List<String> SUPPORTED = Collections.unmodifiableList(
+                Arrays.asList(ENGLISH, "fr", "de", "es", "it", "pt", "nl"));
+
+    private Languages() {
+    }
+
+    public static boolean isSupported(String language) {
+        return SUPPORTED.contains(language);
+    }
+
+    /**
+     * Resource path of the language's list of common words, used both as
+     * stopwords and to build its n-gram profile.
+     */
+    public static String wordListPath(String language) {
+        if (ENGLISH.equals(language))
+            return "/nlp/top1000words.txt";
+        return "/nlp/stopwords/" + language + ".txt";
+    }
+
+    public static SnowballStemmer newStemmer(String language) {
+        switch (language) {
+        case "fr":
+            return new frenchStemmer();
+        case "de":
+            return new germanStemmer();
+        case "es":
+            return new spanishStemmer();
+        case "it":
+            return new italianStemmer();
+        case "pt":
+            return new portugueseStemmer();
+        case "nl":
+            return new dutchStemmer();
+        default:
+            return new englishStemmer();
+        }
+    }
+
+}
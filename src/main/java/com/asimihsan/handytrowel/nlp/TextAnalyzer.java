@@ -27,13 +27,15 @@ import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.tartarus.snowball.SnowballStemmer;
-import org.tartarus.snowball.ext.englishStemmer;
 
 import com.google.common.base.Joiner;
 
+import com.asimihsan.handytrowel.nlp.TokenNormalizer.TokenNormalizerBuilder;
+
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.pipeline.Annotation;
@@ -55,13 +57,53 @@ public class TextAnalyzer {
      */
     private final String body;
 
+    /**
+     * The most tokens to emit. Analysis stops once this many tokens have
+     * been produced and the analyzer is marked as truncated. The body is
+     * annotated a chunk at a time, so the rest of a long body is never
+     * tokenized either.
+     *
+     * The default value is zero, i.e. no limit.
+     */
+    private final int maxTokens;
+
+    /**
+     * ISO 639-1 code of the body's language, which picks the stopword list
+     * and stemmer. Must be one of {@link Languages#SUPPORTED}.
+     *
+     * The default value is English.
+     */
+    private final String language;
+
+    /**
+     * How each token is normalized before stemming.
+     *
+     * The default drops punctuation, folds numbers and folds case.
+     */
+    private final TokenNormalizer normalizer;
+
     public static class TextAnalyzerBuilder {
         private String body;
+        private int maxTokens = 0;
+        private String language = Languages.ENGLISH;
+        private TokenNormalizer normalizer = new TokenNormalizerBuilder().build();
 
         public TextAnalyzerBuilder body(String body) {
             this.body = body;
             return this;
         }
+        public TextAnalyzerBuilder maxTokens(int maxTokens) {
+            this.maxTokens = maxTokens;
+            return this;
+        }
+        public TextAnalyzerBuilder language(String language) {
+            this.language = language;
+            return this;
+        }
+        public TextAnalyzerBuilder normalizer(TokenNormalizer normalizer) {
+            this.normalizer = normalizer;
+            return this;
+        }
         public TextAnalyzer build() {
             return new TextAnalyzer(this);
         }
@@ -69,6 +111,9 @@ public class TextAnalyzer {
 
     private TextAnalyzer(TextAnalyzerBuilder builder) {
         this.body = builder.body;
+        this.maxTokens = builder.maxTokens;
+        this.language = builder.language;
+        this.normalizer = builder.normalizer;
     }
 
     /**
@@ -78,71 +123,115 @@ public class TextAnalyzer {
     private final List<String> tokens = new LinkedList<>();
 
     /**
-     * Regular expression object that matches for punctuation. Note that
-     * this also matches full stops, so we lose sentence information.
-     *
-     * Sometimes Stanford CoreNLP's tokenizer spits out "'s" and 'n't" on
-     * its own, so we ignore single letters before/after punctuation too.
-     *
-     * Note that Stanford CoreNLP helpfully points out brackets with
-     * -lrb- and -rrb-. Let's chuck those too.
+     * Whether analyze() stopped early because it hit maxTokens.
      */
-    private final Pattern punctuation = Pattern.compile("(?:[a-z]?[\\p{Punct}]+[a-z]?|-[lr].b-)");
-
-    /**
-     * A compiled number regular expression so we can replace all using it
-     * with $NUMBER.
-     */
-    private final Pattern number = Pattern.compile("[0-9]+");
+    private boolean truncated = false;
 
     public List<String> getTokens() {
         return tokens;
     }
 
-    public TextAnalyzer analyze() {
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * CoreNLP pipelines by language, each built the first time an article
+     * in that language is analyzed. Building one costs far more than
+     * annotating a typical article, and once built they only read their
+     * configuration, so every analyzer and thread shares them.
+     */
+    private static final ConcurrentMap<String, StanfordCoreNLP> PIPELINES = new ConcurrentHashMap<>();
+
+    private static StanfordCoreNLP pipeline(String language) throws IOException {
+        StanfordCoreNLP pipeline = PIPELINES.get(language);
+        if (pipeline != null)
+            return pipeline;
+
         // Stanford CoreNLP, avoid lemmatization as it's very slow to use Porter2 stemming
         // instead. (Porter -> Snowball (Porter2) -> Lancaster is order of stemming
         // aggressiveness.
         //
         // other ideas
         // - remove top 10k most common english words
+
+        // CoreNLP keeps annotators in one static pool by name and looks them
+        // up outside its lock, so each language's stopword annotator gets a
+        // name of its own; otherwise two languages' pipelines built at once
+        // could each end up with the other's stopwords.
+        String stopwordAnnotator = StopwordAnnotator.ANNOTATOR_CLASS + "_" + language;
         Properties props = new Properties();
-        props.put("annotators", "tokenize, ssplit, stopword");
-        props.setProperty("customAnnotatorClass.stopword", "com.asimihsan.handytrowel.nlp.StopwordAnnotator");
-        List<String> stopWords = null;
+        props.put("annotators", "tokenize, ssplit, " + stopwordAnnotator);
+        props.setProperty("customAnnotatorClass." + stopwordAnnotator,
+                          "com.asimihsan.handytrowel.nlp.StopwordAnnotator");
+        List<String> stopWords = WordReader.wordReaderWithResourcePath(Languages.wordListPath(language)).getWords();
+        String customStopWordList = Joiner.on(",").join(stopWords);
+        props.setProperty(StopwordAnnotator.STOPWORDS_LIST, customStopWordList);
+        pipeline = new StanfordCoreNLP(props);
+        StanfordCoreNLP existing = PIPELINES.putIfAbsent(language, pipeline);
+        return existing != null ? existing : pipeline;
+    }
+
+    public TextAnalyzer analyze() {
+        StanfordCoreNLP pipeline = null;
         try {
-            stopWords = WordReader.wordReaderWithResourcePath("/nlp/top1000words.txt").getWords();
+            pipeline = pipeline(language);
         } catch (IOException e) {
             e.printStackTrace();
             return this;
         }
-        String customStopWordList = Joiner.on(",").join(stopWords);
-        props.setProperty(StopwordAnnotator.STOPWORDS_LIST, customStopWordList);
-        StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
-        Annotation document = new Annotation(body);
+        SnowballStemmer stemmer = Languages.newStemmer(language);
+        int start = 0;
+        while (start < body.length() && !truncated) {
+            int end = maxTokens > 0 ? chunkEnd(start) : body.length();
+            analyze(pipeline, stemmer, body.substring(start, end));
+            start = end;
+        }
+        return this;
+    }
+
+    /**
+     * Most characters of the body to annotate at once when maxTokens is
+     * set. Articles are mostly far shorter and annotated in one go.
+     */
+    private static final int CHUNK_CHARS = 64 * 1024;
+
+    /**
+     * The end of the chunk of the body starting at start: CHUNK_CHARS on,
+     * backed up to whitespace so that no word is split between chunks.
+     */
+    private int chunkEnd(int start) {
+        int end = start + CHUNK_CHARS;
+        if (end >= body.length())
+            return body.length();
+        for (int i = end; i > start; i--) {
+            if (Character.isWhitespace(body.charAt(i - 1)))
+                return i;
+        }
+        return Character.isHighSurrogate(body.charAt(end - 1)) ? end - 1 : end;
+    }
+
+    private void analyze(StanfordCoreNLP pipeline, SnowballStemmer stemmer, String text) {
+        Annotation document = new Annotation(text);
         pipeline.annotate(document);
         List<CoreLabel> inputTokens = document.get(CoreAnnotations.TokensAnnotation.class);
-        SnowballStemmer stemmer = new englishStemmer();
         for (CoreLabel token : inputTokens) {
+            if (maxTokens > 0 && tokens.size() >= maxTokens) {
+                truncated = true;
+                return;
+            }
             Pair<Boolean, Boolean> stopword = token.get(StopwordAnnotator.class);
             if (stopword.first())
                 continue;
-            String word = token.word().toLowerCase();
-
-            //!!AI TODO this sucks, should make another annotator and make it optional etc.
-            //also we're matching full stops! so we lose sentence information.
-            if (punctuation.matcher(word).matches())
+            String word = normalizer.normalize(token.word());
+            if (word == null)
                 continue;
 
-            //!AI TODO again this would be its own annotator and optional
-            word = number.matcher(word).replaceAll("NUMBER");
-
             stemmer.setCurrent(word);
             stemmer.stem();
             word = stemmer.getCurrent();
             tokens.add(word);
         }
-        return this;
     }
 
     // Stanford NLP tokenizer, trained on Penn Tree Bank (PTB)
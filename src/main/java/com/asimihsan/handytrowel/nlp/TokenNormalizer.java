@@ -0,0 +1,225 @@
+/** ========================================================================
+  * handytrowel: src/main/java/nlp/TokenNormalizer.java
+  * Single-pass token normalization: punctuation, numbers and case.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.nlp;
+
+import java.util.Locale;
+
+/**
+ * Normalize tokens before stemming: drop punctuation, fold runs of digits
+ * into a placeholder and fold case, each of which can be switched off.
+ *
+ * A token is classified and rewritten in one scan of its characters, with
+ * no regular expressions. A token that needs no change is returned as is,
+ * so only tokens that actually change allocate a new String.
+ *
+ * With every step on this gives the same tokens as the original regular
+ * expression path: lower case the token, drop it if it matches
+ * {@code (?:[a-z]?[\p{Punct}]+[a-z]?|-[lr].b-)}, then replace {@code [0-9]+}
+ * with NUMBER. Case folding is locale independent.
+ *
+ * Immutable and thread-safe.
+ *
+ * @author Asim Ihsan
+ */
+public class TokenNormalizer {
+
+    /**
+     * What each run of digits is replaced with.
+     */
+    public static final String NUMBER = "NUMBER";
+
+    /**
+     * If true, tokens made only of ASCII punctuation, optionally with a
+     * single letter on either side such as "'s" and "n't", are dropped, as
+     * are Stanford CoreNLP's bracket tokens like "-lrb-". Note that this
+     * drops full stops too, so sentence information is lost.
+     *
+     * The default value is true.
+     */
+    private final boolean dropPunctuation;
+
+    /**
+     * If true each run of ASCII digits is replaced with {@link #NUMBER}.
+     *
+     * The default value is true.
+     */
+    private final boolean foldNumbers;
+
+    /**
+     * If true tokens are lower cased.
+     *
+     * The default value is true.
+     */
+    private final boolean foldCase;
+
+    public static class TokenNormalizerBuilder {
+        private boolean dropPunctuation = true;
+        private boolean foldNumbers = true;
+        private boolean foldCase = true;
+
+        public TokenNormalizerBuilder dropPunctuation(boolean dropPunctuation) {
+            this.dropPunctuation = dropPunctuation;
+            return this;
+        }
+
+        public TokenNormalizerBuilder foldNumbers(boolean foldNumbers) {
+            this.foldNumbers = foldNumbers;
+            return this;
+        }
+
+        public TokenNormalizerBuilder foldCase(boolean foldCase) {
+            this.foldCase = foldCase;
+            return this;
+        }
+
+        public TokenNormalizer build() {
+            return new TokenNormalizer(this);
+        }
+    }
+
+    private TokenNormalizer(TokenNormalizerBuilder builder) {
+        this.dropPunctuation = builder.dropPunctuation;
+        this.foldNumbers = builder.foldNumbers;
+        this.foldCase = builder.foldCase;
+    }
+
+    /**
+     * Normalize one token.
+     *
+     * @return null if the token should be dropped, the token itself if it
+     *         needs no change, or else the rewritten token.
+     */
+    public String normalize(final String token) {
+        if (dropPunctuation && isPunctuation(token))
+            return null;
+        final int length = token.length();
+        for (int i = 0; i < length; i++) {
+            final char c = token.charAt(i);
+            if (c < 0x80) {
+                if ((foldNumbers && isDigit(c)) || (foldCase && c >= 'A' && c <= 'Z'))
+                    return rewrite(token, i);
+            } else if (foldCase) {
+                final int codePoint = token.codePointAt(i);
+                if (Character.toLowerCase(codePoint) != codePoint)
+                    return rewrite(token, i);
+                if (Character.isSupplementaryCodePoint(codePoint))
+                    i++;
+            }
+        }
+        return token;
+    }
+
+    /**
+     * Rewrite a token whose first change is at index from.
+     */
+    private String rewrite(String token, int from) {
+        if (foldCase && !isAsciiFrom(token, from)) {
+            // Leave the rare non-ASCII case mappings, some of which change
+            // a String's length, to the JDK.
+            token = token.toLowerCase(Locale.ROOT);
+            if (!foldNumbers)
+                return token;
+            from = 0;
+            while (from < token.length() && !isDigit(token.charAt(from)))
+                from++;
+            if (from == token.length())
+                return token;
+        }
+        final int length = token.length();
+        final StringBuilder out = new StringBuilder(length + NUMBER.length());
+        out.append(token, 0, from);
+        boolean inNumber = false;
+        for (int i = from; i < length; i++) {
+            char c = token.charAt(i);
+            if (foldNumbers && isDigit(c)) {
+                if (!inNumber)
+                    out.append(NUMBER);
+                inNumber = true;
+                continue;
+            }
+            inNumber = false;
+            if (foldCase && c >= 'A' && c <= 'Z')
+                c += 'a' - 'A';
+            out.append(c);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Whether the token is punctuation, optionally with one letter either
+     * side, or a bracket token such as "-lrb-".
+     */
+    static boolean isPunctuation(final String token) {
+        final int length = token.length();
+        if (length == 5 && token.charAt(0) == '-' && token.charAt(4) == '-'
+                && isLetter(token.charAt(3), 'b') && !isLineTerminator(token.charAt(2))
+                && (isLetter(token.charAt(1), 'l') || isLetter(token.charAt(1), 'r')))
+            return true;
+        int start = length > 0 && isAsciiLetter(token.charAt(0)) ? 1 : 0;
+        int end = length > start && isAsciiLetter(token.charAt(length - 1)) ? length - 1 : length;
+        if (end <= start)
+            return false;
+        for (int i = start; i < end; i++) {
+            if (!isAsciiPunctuation(token.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isAsciiFrom(final String token, final int from) {
+        for (int i = from; i < token.length(); i++) {
+            if (token.charAt(i) >= 0x80)
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isAsciiLetter(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * Whether c is the given lower case letter in either case.
+     */
+    private static boolean isLetter(final char c, final char lower) {
+        return c == lower || c == lower - ('a' - 'A');
+    }
+
+    private static boolean isLineTerminator(final char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * The characters of \p{Punct}: !"#$%&'()*+,-./:;<=>?@[\]^_`{|}~
+     */
+    private static boolean isAsciiPunctuation(final char c) {
+        return (c >= '!' && c <= '/') || (c >= ':' && c <= '@') || (c >= '[' && c <= '`')
+               || (c >= '{' && c <= '~');
+    }
+
+}
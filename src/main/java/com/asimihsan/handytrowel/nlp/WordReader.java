@@ -53,7 +53,7 @@ public class WordReader {
         List<String> words = new LinkedList<>();
         try (
                 InputStream is = getClass().getResourceAsStream(this.resourcePath);
-                InputStreamReader isr = new InputStreamReader(is, StandardCharsets.US_ASCII);
+                InputStreamReader isr = new InputStreamReader(is, StandardCharsets.UTF_8);
                 BufferedReader br = new BufferedReader(isr);
             ) {
             String line = null;
@@ -0,0 +1,53 @@
+/** ========================================================================
+  * handytrowel: src/main/java/output/ArticleSink.java
+  * Destination for processed article records.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.output;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import com.asimihsan.handytrowel.pipeline.ArticleRecord;
+
+/**
+ * Somewhere processed {@link ArticleRecord}s are written to.
+ *
+ * Batch runs call write() from many threads at once, so implementations
+ * must be thread-safe. close() is called once after the last write.
+ *
+ * A batch run with a journal only journals a URL as finished once a
+ * checkpoint() after its record was written has returned, so that a
+ * resumed run never skips a URL whose record was lost in a crash.
+ *
+ * @author Asim Ihsan
+ */
+public interface ArticleSink extends Closeable {
+
+    void write(ArticleRecord record) throws IOException;
+
+    /**
+     * Make every record written so far durable, so that it survives a
+     * crash. Other threads may keep writing meanwhile.
+     */
+    void checkpoint() throws IOException;
+
+}
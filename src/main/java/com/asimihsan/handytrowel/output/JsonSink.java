@@ -0,0 +1,73 @@
+/** ========================================================================
+  * handytrowel: src/main/java/output/JsonSink.java
+  * Write article records as JSON to a stream.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.asimihsan.handytrowel.pipeline.ArticleRecord;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Write each {@link ArticleRecord} as an indented JSON object followed by
+ * a newline.
+ *
+ * @author Asim Ihsan
+ */
+public class JsonSink implements ArticleSink {
+
+    private final OutputStream out;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public JsonSink(OutputStream out) {
+        this.out = out;
+        mapper.configure(SerializationFeature.INDENT_OUTPUT, true);
+        // Records share the stream, don't let Jackson close it after each one.
+        mapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+    }
+
+    @Override
+    public synchronized void write(ArticleRecord record) throws IOException {
+        mapper.writeValue(out, record);
+        out.write('\n');
+        out.flush();
+    }
+
+    /**
+     * Records are flushed as they are written; this is as durable as a
+     * stream gets.
+     */
+    @Override
+    public synchronized void checkpoint() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.flush();
+    }
+
+}
@@ -0,0 +1,319 @@
+/** ========================================================================
+  * handytrowel: src/main/java/pipeline/ArticlePipeline.java
+  * Fetch, extract and analyze a single article.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.pipeline;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+
+import org.xml.sax.SAXException;
+
+import de.l3s.boilerpipe.BoilerpipeProcessingException;
+
+import com.asimihsan.handytrowel.extraction.ArticleProcessor;
+import com.asimihsan.handytrowel.extraction.ExtractedArticle;
+import com.asimihsan.handytrowel.extraction.HTMLPreScanner;
+import com.asimihsan.handytrowel.network.FetchedPage;
+import com.asimihsan.handytrowel.network.HTMLFetcher;
+import com.asimihsan.handytrowel.nlp.DocumentFrequencyStore;
+import com.asimihsan.handytrowel.nlp.LanguageIdentifier;
+import com.asimihsan.handytrowel.nlp.Languages;
+import com.asimihsan.handytrowel.nlp.TextAnalyzer;
+import com.asimihsan.handytrowel.nlp.TextAnalyzer.TextAnalyzerBuilder;
+import com.asimihsan.handytrowel.nlp.TokenNormalizer;
+import com.asimihsan.handytrowel.nlp.TokenNormalizer.TokenNormalizerBuilder;
+
+/**
+ * Run a URL through every stage of handytrowel, i.e. fetching, article
+ * and link extraction, then text analysis, and collect the results into an
+ * {@link ArticleRecord}.
+ *
+ * Size limits are checked as soon as the stage that can detect them
+ * finishes. Oversized articles are either truncated and carried on, or
+ * aborted before any later, more expensive stage runs on them.
+ *
+ * Given a {@link MemoryBudget.Reservation}, the document's estimated heap
+ * footprint is charged to it before each stage, so that a
+ * {@link MemoryBudget} can hold back new documents while large ones are in
+ * flight.
+ *
+ * @author Asim Ihsan
+ */
+public class ArticlePipeline {
+
+    public static final String LIMIT_PAGE_BYTES = "pageBytes";
+    public static final String LIMIT_BODY_CHARS = "extractedBody";
+    public static final String LIMIT_TOKENS = "tokens";
+
+    private final HTMLFetcher fetcher;
+
+    /**
+     * The most characters of extracted body to analyze. Zero means no
+     * limit.
+     */
+    private final int maxBodyChars;
+
+    /**
+     * The most tokens to emit per article. Zero means no limit.
+     */
+    private final int maxTokens;
+
+    /**
+     * If true articles that exceed any limit are aborted rather than
+     * truncated.
+     */
+    private final boolean abortOversized;
+
+    /**
+     * Corpus document frequencies that each article's stems are added to,
+     * and that keywords are ranked against. If null no keywords are
+     * extracted.
+     */
+    private final DocumentFrequencyStore documentFrequencies;
+
+    /**
+     * How many keywords to extract per article.
+     */
+    private final int keywords;
+
+    /**
+     * Identifies each article's language before analysis. If null every
+     * article is analyzed as English.
+     */
+    private final LanguageIdentifier languageIdentifier;
+
+    /**
+     * Languages to analyze, with their own stopwords and stemmer. Articles
+     * identified as any other language keep their body and links but are
+     * not analyzed. Articles whose language can't be told are analyzed as
+     * English.
+     */
+    private final Set<String> analyzedLanguages;
+
+    /**
+     * How tokens are normalized before stemming.
+     */
+    private final TokenNormalizer normalizer;
+
+    /**
+     * If true script, style, SVG and comments are stripped from each page
+     * by {@link HTMLPreScanner} before it is parsed.
+     */
+    private final boolean preScan;
+
+    public static class ArticlePipelineBuilder {
+        private HTMLFetcher fetcher;
+        private int maxBodyChars = 0;
+        private int maxTokens = 0;
+        private boolean abortOversized = false;
+        private DocumentFrequencyStore documentFrequencies = null;
+        private int keywords = 10;
+        private LanguageIdentifier languageIdentifier = null;
+        private Set<String> analyzedLanguages = new HashSet<>(Languages.SUPPORTED);
+        private TokenNormalizer normalizer = new TokenNormalizerBuilder().build();
+        private boolean preScan = false;
+
+        public ArticlePipelineBuilder fetcher(HTMLFetcher fetcher) {
+            this.fetcher = fetcher;
+            return this;
+        }
+
+        public ArticlePipelineBuilder maxBodyChars(int maxBodyChars) {
+            this.maxBodyChars = maxBodyChars;
+            return this;
+        }
+
+        public ArticlePipelineBuilder maxTokens(int maxTokens) {
+            this.maxTokens = maxTokens;
+            return this;
+        }
+
+        public ArticlePipelineBuilder abortOversized(boolean abortOversized) {
+            this.abortOversized = abortOversized;
+            return this;
+        }
+
+        public ArticlePipelineBuilder documentFrequencies(DocumentFrequencyStore documentFrequencies) {
+            this.documentFrequencies = documentFrequencies;
+            return this;
+        }
+
+        public ArticlePipelineBuilder keywords(int keywords) {
+            this.keywords = keywords;
+            return this;
+        }
+
+        public ArticlePipelineBuilder languageIdentifier(LanguageIdentifier languageIdentifier) {
+            this.languageIdentifier = languageIdentifier;
+            return this;
+        }
+
+        public ArticlePipelineBuilder analyzedLanguages(Set<String> analyzedLanguages) {
+            this.analyzedLanguages = new HashSet<>(analyzedLanguages);
+            return this;
+        }
+
+        public ArticlePipelineBuilder normalizer(TokenNormalizer normalizer) {
+            this.normalizer = normalizer;
+            return this;
+        }
+
+        public ArticlePipelineBuilder preScan(boolean preScan) {
+            this.preScan = preScan;
+            return this;
+        }
+
+        public ArticlePipeline build() {
+            return new ArticlePipeline(this);
+        }
+    }
+
+    private ArticlePipeline(ArticlePipelineBuilder builder) {
+        this.fetcher = builder.fetcher;
+        this.maxBodyChars = builder.maxBodyChars;
+        this.maxTokens = builder.maxTokens;
+        this.abortOversized = builder.abortOversized;
+        this.documentFrequencies = builder.documentFrequencies;
+        this.keywords = builder.keywords;
+        this.languageIdentifier = builder.languageIdentifier;
+        this.analyzedLanguages = builder.analyzedLanguages;
+        this.normalizer = builder.normalizer;
+        this.preScan = builder.preScan;
+    }
+
+    public ArticleRecord process(String url)
+    throws TimeoutException, BoilerpipeProcessingException, SAXException, IOException {
+        return process(url, null);
+    }
+
+    /**
+     * Process url, resizing reservation to the document's estimated
+     * footprint as it moves through the stages.
+     *
+     * @param reservation
+     *            the document's share of a {@link MemoryBudget}, or null.
+     */
+    public ArticleRecord process(String url, MemoryBudget.Reservation reservation)
+    throws TimeoutException, BoilerpipeProcessingException, SAXException, IOException {
+        return process(fetcher.fetch(url), reservation);
+    }
+
+    public ArticleRecord process(FetchedPage page)
+    throws BoilerpipeProcessingException, SAXException, IOException {
+        return process(page, null);
+    }
+
+    public ArticleRecord process(FetchedPage page, MemoryBudget.Reservation reservation)
+    throws BoilerpipeProcessingException, SAXException, IOException {
+        resize(reservation, Footprint.fetched(page.getContent().length));
+        ArticleRecord record = processStages(page, reservation);
+        resize(reservation, Footprint.record(record));
+        return record;
+    }
+
+    private ArticleRecord processStages(FetchedPage page, MemoryBudget.Reservation reservation)
+    throws BoilerpipeProcessingException, SAXException, IOException {
+        ArticleRecord record = new ArticleRecord(page.getUrl());
+        record.setResources(page.getResourceStats());
+        if (page.getCompletion() != null) {
+            record.setCompletion(page.getCompletion());
+            record.setRenderMillis(page.getRenderMillis());
+        }
+        if (page.isTruncated() && limitExceeded(record, LIMIT_PAGE_BYTES))
+            return record;
+        if (preScan) {
+            page = HTMLPreScanner.strip(page);
+            record.setStrippedBytes(page.getStrippedBytes());
+        }
+
+        // The body is no longer than the page, so this bounds extraction.
+        int pageBytes = page.getContent().length;
+        resize(reservation, Footprint.extracting(pageBytes, pageBytes));
+        ExtractedArticle article = ArticleProcessor.INSTANCE.process(page, maxBodyChars);
+        if (article.isTruncated() && limitExceeded(record, LIMIT_BODY_CHARS))
+            return record;
+
+        String language = Languages.ENGLISH;
+        if (languageIdentifier != null) {
+            language = languageIdentifier.identify(article.getBody());
+            record.setLanguage(language);
+            if (LanguageIdentifier.UNKNOWN.equals(language)) {
+                language = Languages.ENGLISH;
+            } else if (!analyzedLanguages.contains(language) || !Languages.isSupported(language)) {
+                record.setExtractedBody(article.getBody());
+                record.setLinks(article.getLinks());
+                return record;
+            }
+        }
+
+        resize(reservation, Footprint.analyzing(article.getBody().length()));
+        TextAnalyzer analyzer = new TextAnalyzerBuilder()
+        .body(article.getBody())
+        .maxTokens(maxTokens)
+        .language(language)
+        .normalizer(normalizer)
+        .build()
+        .analyze();
+        if (analyzer.isTruncated() && limitExceeded(record, LIMIT_TOKENS))
+            return record;
+
+        record.setExtractedBody(article.getBody());
+        record.setLinks(article.getLinks());
+        record.setTokens(analyzer.getTokens());
+        if (documentFrequencies != null) {
+            documentFrequencies.addDocument(analyzer.getTokens());
+            record.setKeywords(documentFrequencies.topKeywords(analyzer.getTokens(), keywords));
+        }
+        return record;
+    }
+
+    /**
+     * Save the document frequencies, if there are any, so that they
+     * survive a crash.
+     */
+    public void checkpoint() throws IOException {
+        if (documentFrequencies != null)
+            documentFrequencies.save();
+    }
+
+    private static void resize(MemoryBudget.Reservation reservation, long bytes) {
+        if (reservation != null)
+            reservation.resize(bytes);
+    }
+
+    /**
+     * Record that a limit was hit. Returns true if processing of the
+     * article should stop here.
+     */
+    private boolean limitExceeded(ArticleRecord record, String limit) {
+        record.getTruncated().add(limit);
+        if (abortOversized) {
+            record.setAborted(limit);
+            return true;
+        }
+        return false;
+    }
+
+}
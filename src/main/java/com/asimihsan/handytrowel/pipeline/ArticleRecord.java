@@ -0,0 +1,182 @@
+/** ========================================================================
+  * handytrowel: src/main/java/pipeline/ArticleRecord.java
+  * Output record for a single processed article.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.asimihsan.handytrowel.network.RenderCompletion;
+import com.asimihsan.handytrowel.network.ResourceStats;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * Everything handytrowel outputs about a single article. This is what gets
+ * serialized to JSON.
+ *
+ * @author Asim Ihsan
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({"url", "language", "aborted", "truncated", "completion", "renderMillis", "resources", "strippedBytes", "keywords", "tokens", "links", "extractedBody"})
+public class ArticleRecord {
+
+    private final String url;
+
+    /**
+     * ISO 639-1 code of the article's language, if it was identified.
+     */
+    private String language;
+    private String extractedBody;
+    private List<String> links;
+    private List<String> tokens;
+
+    /**
+     * The article's most distinctive stems by TF-IDF, best first.
+     */
+    private List<String> keywords;
+
+    /**
+     * Names of the limits this article ran into, in the order the pipeline
+     * hit them.
+     */
+    private final List<String> truncated = new ArrayList<>();
+
+    /**
+     * If the article was skipped for exceeding a limit, the name of that
+     * limit, otherwise null.
+     */
+    private String aborted;
+
+    /**
+     * Subresource requests the renderer blocked and allowed, if it was
+     * filtering them.
+     */
+    private ResourceStats resources;
+
+    /**
+     * What ended the wait for the page to render, and how long rendering
+     * took.
+     */
+    private RenderCompletion completion;
+    private Long renderMillis;
+
+    /**
+     * How many bytes of script, style, SVG and comments were stripped from
+     * the page before parsing, if it was pre-scanned.
+     */
+    private Integer strippedBytes;
+
+    public ArticleRecord(String url) {
+        this.url = url;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public void setLanguage(String language) {
+        this.language = language;
+    }
+
+    public String getExtractedBody() {
+        return extractedBody;
+    }
+
+    public void setExtractedBody(String extractedBody) {
+        this.extractedBody = extractedBody;
+    }
+
+    public List<String> getLinks() {
+        return links;
+    }
+
+    public void setLinks(List<String> links) {
+        this.links = links;
+    }
+
+    public List<String> getTokens() {
+        return tokens;
+    }
+
+    public void setTokens(List<String> tokens) {
+        this.tokens = tokens;
+    }
+
+    public List<String> getKeywords() {
+        return keywords;
+    }
+
+    public void setKeywords(List<String> keywords) {
+        this.keywords = keywords;
+    }
+
+    public List<String> getTruncated() {
+        return truncated;
+    }
+
+    public String getAborted() {
+        return aborted;
+    }
+
+    public void setAborted(String aborted) {
+        this.aborted = aborted;
+    }
+
+    public RenderCompletion getCompletion() {
+        return completion;
+    }
+
+    public void setCompletion(RenderCompletion completion) {
+        this.completion = completion;
+    }
+
+    public Long getRenderMillis() {
+        return renderMillis;
+    }
+
+    public void setRenderMillis(Long renderMillis) {
+        this.renderMillis = renderMillis;
+    }
+
+    public ResourceStats getResources() {
+        return resources;
+    }
+
+    public void setResources(ResourceStats resources) {
+        this.resources = resources;
+    }
+
+    public Integer getStrippedBytes() {
+        return strippedBytes;
+    }
+
+    public void setStrippedBytes(Integer strippedBytes) {
+        this.strippedBytes = strippedBytes;
+    }
+
+}
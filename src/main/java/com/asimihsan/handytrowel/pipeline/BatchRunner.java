@@ -0,0 +1,338 @@
+/** ========================================================================
+  * handytrowel: src/main/java/pipeline/BatchRunner.java
+  * Run many URLs through the pipeline concurrently.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.pipeline;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.asimihsan.handytrowel.output.ArticleSink;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+/**
+ * Process a batch of URLs through an {@link ArticlePipeline} on a fixed
+ * number of threads, handing every record to each {@link ArticleSink}.
+ *
+ * A URL that fails is reported on stderr and skipped; it does not stop the
+ * rest of the batch.
+ *
+ * With a {@link RunJournal}, URLs the journal says are finished are
+ * skipped, so a run that dies can be restarted where it left off. Failures
+ * are journaled as they happen. Successes are journaled at the next
+ * checkpoint, every checkpointEvery of them and at the end of each run,
+ * once every sink and the pipeline's document frequencies have made them
+ * durable; a crash therefore never leaves the journal ahead of the sinks,
+ * at worst a few URLs are processed again and their documents counted
+ * twice.
+ *
+ * With a {@link MemoryBudget}, each URL must be admitted by the budget
+ * before its thread starts on it, so when large pages are in flight the
+ * threads wait rather than overcommit the heap.
+ *
+ * @author Asim Ihsan
+ */
+public class BatchRunner {
+
+    private final ArticlePipeline pipeline;
+    private final List<ArticleSink> sinks;
+
+    /**
+     * How many URLs to process at once.
+     *
+     * The default value is 1.
+     */
+    private final int threads;
+
+    /**
+     * Journal of finished URLs. If null every URL is processed.
+     */
+    private final RunJournal journal;
+
+    /**
+     * Heap budget shared by the URLs in flight. If null any number of
+     * URLs, up to the thread count, are processed at once.
+     */
+    private final MemoryBudget memoryBudget;
+
+    /**
+     * How many successes to journal at once, after a checkpoint. Unused
+     * without a journal.
+     *
+     * The default value is 1000.
+     */
+    private final int checkpointEvery;
+
+    /**
+     * Successes written to every sink but not yet journaled, waiting for
+     * the next checkpoint. Guarded by itself.
+     */
+    private final List<Finished> unjournaled = new ArrayList<>();
+
+    /**
+     * Serializes checkpoints.
+     */
+    private final Object checkpointLock = new Object();
+
+    /**
+     * How many URLs the journal let this runner skip.
+     */
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    /**
+     * How many URLs have failed so far.
+     */
+    private final AtomicInteger failures = new AtomicInteger();
+
+    public static class BatchRunnerBuilder {
+        private ArticlePipeline pipeline;
+        private List<ArticleSink> sinks = new ArrayList<>();
+        private int threads = 1;
+        private RunJournal journal = null;
+        private MemoryBudget memoryBudget = null;
+        private int checkpointEvery = 1000;
+
+        public BatchRunnerBuilder pipeline(ArticlePipeline pipeline) {
+            this.pipeline = pipeline;
+            return this;
+        }
+
+        public BatchRunnerBuilder sink(ArticleSink sink) {
+            this.sinks.add(sink);
+            return this;
+        }
+
+        public BatchRunnerBuilder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public BatchRunnerBuilder journal(RunJournal journal) {
+            this.journal = journal;
+            return this;
+        }
+
+        public BatchRunnerBuilder memoryBudget(MemoryBudget memoryBudget) {
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
+        public BatchRunnerBuilder checkpointEvery(int checkpointEvery) {
+            this.checkpointEvery = checkpointEvery;
+            return this;
+        }
+
+        public BatchRunner build() {
+            return new BatchRunner(this);
+        }
+    }
+
+    private BatchRunner(BatchRunnerBuilder builder) {
+        this.pipeline = builder.pipeline;
+        this.sinks = new ArrayList<>(builder.sinks);
+        this.threads = builder.threads;
+        this.journal = builder.journal;
+        this.memoryBudget = builder.memoryBudget;
+        this.checkpointEvery = Math.max(1, builder.checkpointEvery);
+    }
+
+    /**
+     * Process every URL, returning once all of them are done.
+     */
+    public void run(List<String> urls) throws IOException, InterruptedException {
+        run(urls, Predicates.<String>alwaysTrue());
+    }
+
+    /**
+     * Process every URL, returning once all of them are done, but skip any
+     * URL for which proceed is false when a thread gets to it. That lets a
+     * caller give up on the rest of a batch part way through.
+     */
+    public void run(List<String> urls, final Predicate<String> proceed) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (final String url : urls) {
+            if (!shouldProcess(url))
+                continue;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (proceed.apply(url))
+                        process(url);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        checkpoint();
+    }
+
+    /**
+     * Whether url still needs processing: false, and counted as skipped,
+     * if the journal says it is finished.
+     */
+    public boolean shouldProcess(String url) {
+        if (journal == null || journal.shouldProcess(url))
+            return true;
+        skipped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Process one URL and hand its record to every sink.
+     *
+     * @return the record, or null if the URL failed, or the thread was
+     *         interrupted while waiting for room in the memory budget.
+     */
+    public ArticleRecord process(String url) {
+        MemoryBudget.Reservation reservation = null;
+        if (memoryBudget != null) {
+            try {
+                reservation = memoryBudget.admit();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        try {
+            ArticleRecord record = pipeline.process(url, reservation);
+            write(url, record);
+            return record;
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            System.err.println("Failed to process: " + url);
+            e.printStackTrace();
+            journal(url, e instanceof TimeoutException ? RunJournal.Outcome.TIMEOUT : RunJournal.Outcome.ERROR);
+            return null;
+        } finally {
+            if (reservation != null)
+                reservation.close();
+        }
+    }
+
+    /**
+     * Hand url's record to every sink, and queue url to be journaled as a
+     * success at the next checkpoint.
+     */
+    void write(String url, ArticleRecord record) throws IOException {
+        for (ArticleSink sink : sinks)
+            sink.write(record);
+        if (journal == null)
+            return;
+        boolean due;
+        synchronized (unjournaled) {
+            unjournaled.add(new Finished(url, RunJournal.contentHash(record.getExtractedBody())));
+            due = unjournaled.size() >= checkpointEvery;
+        }
+        if (due)
+            checkpoint();
+    }
+
+    /**
+     * Make everything written to the sinks so far durable, then journal
+     * the URLs it came from. If a sink fails those URLs are left out of
+     * the journal, to be processed again by the next run.
+     */
+    public void checkpoint() throws IOException {
+        synchronized (checkpointLock) {
+            List<Finished> finished;
+            synchronized (unjournaled) {
+                if (unjournaled.isEmpty())
+                    return;
+                finished = new ArrayList<>(unjournaled);
+                unjournaled.clear();
+            }
+            for (ArticleSink sink : sinks)
+                sink.checkpoint();
+            if (pipeline != null)
+                pipeline.checkpoint();
+            for (Finished url : finished)
+                journal.record(url.url, RunJournal.Outcome.SUCCESS, url.contentHash);
+            journal.sync();
+        }
+    }
+
+    private static class Finished {
+        private final String url;
+        private final long contentHash;
+
+        Finished(String url, long contentHash) {
+            this.url = url;
+            this.contentHash = contentHash;
+        }
+    }
+
+    private void journal(String url, RunJournal.Outcome outcome) {
+        if (journal == null)
+            return;
+        try {
+            journal.record(url, outcome, 0);
+        } catch (IOException e) {
+            System.err.println("Failed to journal: " + url);
+            e.printStackTrace();
+        }
+    }
+
+    public int getFailures() {
+        return failures.get();
+    }
+
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * The memory budget, or null if there is none.
+     */
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Checkpoint, then close every sink, after the last batch has run.
+     */
+    public void close() throws IOException {
+        IOException first = null;
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            first = e;
+        }
+        for (ArticleSink sink : sinks) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                if (first == null)
+                    first = e;
+            }
+        }
+        if (first != null)
+            throw first;
+    }
+
+}
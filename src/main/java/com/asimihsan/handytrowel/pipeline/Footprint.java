@@ -0,0 +1,116 @@
+/** ========================================================================
+  * handytrowel: src/main/java/pipeline/Footprint.java
+  * Rough heap footprint of a document at each pipeline stage.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.pipeline;
+
+import java.util.List;
+
+/**
+ * Rough estimates of how much heap one document holds at each stage of an
+ * {@link ArticlePipeline}, for charging against a {@link MemoryBudget}.
+ *
+ * The per-character costs were measured with CoreNLP 3.3.1 on synthetic
+ * articles and rounded up; they are meant to be within a factor of two,
+ * which is plenty to keep the heap from being overcommitted.
+ *
+ * @author Asim Ihsan
+ */
+final class Footprint {
+
+    /**
+     * Heap per character of a String, as Java 7 stores them.
+     */
+    static final int CHAR_BYTES = 2;
+
+    /**
+     * Extraction keeps the FetchedPage bytes and decodes them through
+     * toInputSource() for each SAX parse, and boilerpipe's TextDocument
+     * holds the text several times over in blocks, with their own overhead.
+     */
+    static final int EXTRACTION_BYTES_PER_PAGE_BYTE = 2;
+    static final int EXTRACTION_BYTES_PER_BODY_CHAR = 8;
+
+    /**
+     * A CoreNLP Annotation for tokenize and ssplit measured about 300 bytes
+     * per token, or 40 per character of text, with one-byte strings; every
+     * token is a CoreLabel map of strings, boxed offsets and the stopword
+     * pair. Rounded up for two-byte strings.
+     */
+    static final int ANNOTATION_BYTES_PER_CHAR = 48;
+
+    /**
+     * Each kept token is a list node and a short String.
+     */
+    static final int TOKEN_BYTES = 80;
+
+    private Footprint() {
+    }
+
+    /**
+     * A fetched page: its bytes.
+     */
+    static long fetched(int pageBytes) {
+        return pageBytes;
+    }
+
+    /**
+     * During extraction, including the page.
+     */
+    static long extracting(int pageBytes, int bodyChars) {
+        return fetched(pageBytes) + (long) EXTRACTION_BYTES_PER_PAGE_BYTE * pageBytes
+            + (long) EXTRACTION_BYTES_PER_BODY_CHAR * bodyChars;
+    }
+
+    /**
+     * During analysis, including the extracted body and the annotated
+     * tokens. Callers charge this before analysis starts, when only the
+     * body is known, so kept tokens are assumed to average six characters.
+     */
+    static long analyzing(int bodyChars) {
+        return (long) (CHAR_BYTES + ANNOTATION_BYTES_PER_CHAR) * bodyChars
+            + (long) TOKEN_BYTES * (bodyChars / 6);
+    }
+
+    /**
+     * A finished record waiting on the sinks: its body, tokens and links.
+     */
+    static long record(ArticleRecord record) {
+        long bytes = 0;
+        if (record.getExtractedBody() != null)
+            bytes += (long) CHAR_BYTES * record.getExtractedBody().length();
+        bytes += strings(record.getLinks()) + strings(record.getKeywords());
+        if (record.getTokens() != null)
+            bytes += (long) TOKEN_BYTES * record.getTokens().size();
+        return bytes;
+    }
+
+    private static long strings(List<String> strings) {
+        if (strings == null)
+            return 0;
+        long bytes = 0;
+        for (String string : strings)
+            bytes += 48 + (long) CHAR_BYTES * string.length();
+        return bytes;
+    }
+
+}
@@ -0,0 +1,256 @@
+/** ========================================================================
+  * handytrowel: src/main/java/pipeline/MemoryBudget.java
+  * Global heap budget that admits documents only while it has room.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.pipeline;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Admission control for documents in flight, by their estimated heap
+ * footprint rather than their number.
+ *
+ * A document is admitted with {@link #admit()} before it is fetched, which
+ * blocks until the documents already in flight leave enough of the budget
+ * for a typical one. As it moves through the pipeline its
+ * {@link Reservation} is resized to the estimate for its current stage, see
+ * {@link Footprint}, and closing the reservation returns its share.
+ *
+ * Only admission ever waits. A document already in flight is charged its
+ * full estimate even if that takes usage over the budget, since stalling it
+ * halfway could deadlock every thread; the overshoot instead holds back
+ * new documents until it is released. For the same reason a document is
+ * always admitted when nothing else is in flight, however large it is.
+ *
+ * Usage is exposed by the getters and, once {@link #register()} is called,
+ * over JMX as {@value #OBJECT_NAME}.
+ *
+ * Thread-safe.
+ *
+ * @author Asim Ihsan
+ */
+public class MemoryBudget implements MemoryBudgetMXBean {
+
+    public static final String OBJECT_NAME = "com.asimihsan.handytrowel:type=MemoryBudget";
+
+    /**
+     * How much heap, in bytes, documents in flight may use between them.
+     *
+     * The default value is half the maximum heap size.
+     */
+    private final long budgetBytes;
+
+    /**
+     * How much to charge a document on admission, before anything is known
+     * about it. Thereafter the average of the peak footprints of the last
+     * few documents is charged instead.
+     *
+     * The default value is 4MB.
+     */
+    private final long admissionBytes;
+
+    /**
+     * Moving average of finished documents' peak footprints; what the next
+     * document is expected to need.
+     */
+    private double expectedBytes;
+
+    private long usedBytes = 0;
+    private long peakBytes = 0;
+    private int inFlight = 0;
+    private long admitted = 0;
+    private long waits = 0;
+
+    /**
+     * Weight of each finished document in expectedBytes.
+     */
+    private static final double EXPECTED_WEIGHT = 0.1;
+
+    public static class MemoryBudgetBuilder {
+        private long budgetBytes = Runtime.getRuntime().maxMemory() / 2;
+        private long admissionBytes = 4 << 20;
+
+        public MemoryBudgetBuilder budgetBytes(long budgetBytes) {
+            this.budgetBytes = budgetBytes;
+            return this;
+        }
+
+        public MemoryBudgetBuilder admissionBytes(long admissionBytes) {
+            this.admissionBytes = admissionBytes;
+            return this;
+        }
+
+        public MemoryBudget build() {
+            return new MemoryBudget(this);
+        }
+    }
+
+    private MemoryBudget(MemoryBudgetBuilder builder) {
+        this.budgetBytes = builder.budgetBytes;
+        this.admissionBytes = builder.admissionBytes;
+        this.expectedBytes = builder.admissionBytes;
+    }
+
+    /**
+     * Wait until there is room in the budget for another document, then
+     * charge it the expected footprint of a document.
+     *
+     * @return the document's share of the budget, to be closed once the
+     *         document is finished with.
+     */
+    public synchronized Reservation admit() throws InterruptedException {
+        long bytes = Math.min((long) expectedBytes, budgetBytes);
+        if (inFlight > 0 && usedBytes + bytes > budgetBytes) {
+            waits++;
+            while (inFlight > 0 && usedBytes + bytes > budgetBytes)
+                wait();
+        }
+        inFlight++;
+        admitted++;
+        charge(bytes);
+        return new Reservation(bytes);
+    }
+
+    private void charge(long bytes) {
+        usedBytes += bytes;
+        peakBytes = Math.max(peakBytes, usedBytes);
+    }
+
+    private synchronized void resize(Reservation reservation, long bytes) {
+        charge(bytes - reservation.bytes);
+        reservation.bytes = bytes;
+        reservation.peakBytes = Math.max(reservation.peakBytes, bytes);
+        notifyAll();
+    }
+
+    private synchronized void release(Reservation reservation) {
+        usedBytes -= reservation.bytes;
+        reservation.bytes = 0;
+        inFlight--;
+        expectedBytes += EXPECTED_WEIGHT * (reservation.peakBytes - expectedBytes);
+        expectedBytes = Math.max(expectedBytes, 1);
+        notifyAll();
+    }
+
+    /**
+     * One document's share of a {@link MemoryBudget}.
+     */
+    public final class Reservation implements Closeable {
+        private long bytes;
+        private long peakBytes;
+        private boolean closed = false;
+
+        private Reservation(long bytes) {
+            this.bytes = bytes;
+            this.peakBytes = bytes;
+        }
+
+        /**
+         * The document now takes an estimated bytes of heap. Never blocks,
+         * even if this takes usage over the budget.
+         */
+        public void resize(long bytes) {
+            synchronized (MemoryBudget.this) {
+                if (!closed)
+                    MemoryBudget.this.resize(this, Math.max(bytes, 0));
+            }
+        }
+
+        public long getBytes() {
+            synchronized (MemoryBudget.this) {
+                return bytes;
+            }
+        }
+
+        /**
+         * Return the document's share to the budget. Calling it again
+         * does nothing.
+         */
+        @Override
+        public void close() {
+            synchronized (MemoryBudget.this) {
+                if (closed)
+                    return;
+                closed = true;
+                release(this);
+            }
+        }
+    }
+
+    /**
+     * Expose this budget's usage over JMX, replacing any budget registered
+     * before it.
+     */
+    public void register() throws JMException {
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (ManagementFactory.getPlatformMBeanServer().isRegistered(name))
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+    }
+
+    @Override
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    @Override
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    @Override
+    public synchronized long getPeakBytes() {
+        return peakBytes;
+    }
+
+    /**
+     * How many documents hold a share of the budget.
+     */
+    @Override
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    @Override
+    public synchronized long getAdmitted() {
+        return admitted;
+    }
+
+    /**
+     * How many admissions had to wait for room in the budget.
+     */
+    @Override
+    public synchronized long getWaits() {
+        return waits;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("used %d of %d bytes, peak %d, %d in flight, %d admitted, %d waited",
+                usedBytes, budgetBytes, peakBytes, inFlight, admitted, waits);
+    }
+
+}
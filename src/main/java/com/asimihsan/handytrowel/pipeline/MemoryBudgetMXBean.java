@@ -0,0 +1,45 @@
+/** ========================================================================
+  * handytrowel: src/main/java/pipeline/MemoryBudgetMXBean.java
+  * Management interface exposing memory budget usage.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.pipeline;
+
+/**
+ * What a {@link MemoryBudget} exposes over JMX, e.g. to jconsole.
+ *
+ * @author Asim Ihsan
+ */
+public interface MemoryBudgetMXBean {
+
+    long getBudgetBytes();
+
+    long getUsedBytes();
+
+    long getPeakBytes();
+
+    int getInFlight();
+
+    long getAdmitted();
+
+    long getWaits();
+
+}
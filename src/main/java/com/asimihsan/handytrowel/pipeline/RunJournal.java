@@ -0,0 +1,347 @@
+/** ========================================================================
+  * handytrowel: src/main/java/pipeline/RunJournal.java
+  * Append-only journal of URL outcomes that lets a batch run resume.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Records the outcome of every URL a batch run finishes, so that a run
+ * that dies can be restarted without redoing finished work.
+ *
+ * The journal is a binary file of fixed-size records appended as URLs
+ * finish: a 64-bit fingerprint of the URL, an outcome byte and a 64-bit
+ * hash of the extracted content. Appends are buffered and forced to disk
+ * every syncEvery records or syncMillis, whichever comes first, and on
+ * close, so a crash loses at most that last batch, whose URLs are simply
+ * processed again. A background thread checks the age of the oldest
+ * unsynced record every syncMillis, so records are forced even when no
+ * more arrive after them. A torn record left by a crash is dropped on open.
+ *
+ * On open every record is replayed into a compact open addressing table,
+ * which costs a sequential read of 17 bytes per record and no objects per
+ * URL, so replay stays fast for millions of entries. A URL is then skipped
+ * if it succeeded, or if it has already failed maxAttempts times.
+ *
+ * Thread-safe.
+ *
+ * @author Asim Ihsan
+ */
+public class RunJournal {
+
+    public enum Outcome {
+        SUCCESS, TIMEOUT, ERROR
+    }
+
+    private static final byte[] MAGIC = "HTJ1".getBytes(StandardCharsets.US_ASCII);
+    private static final int RECORD_BYTES = 8 + 1 + 8;
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    /**
+     * How many times to try a URL, counting attempts in earlier runs,
+     * before leaving it failed.
+     *
+     * The default value is 3.
+     */
+    private final int maxAttempts;
+
+    /**
+     * Force appended records to disk after this many of them.
+     *
+     * The default value is 1000.
+     */
+    private final int syncEvery;
+
+    /**
+     * Force appended records to disk once the oldest unsynced one is this
+     * old.
+     *
+     * The default value is 1 second.
+     */
+    private final long syncMillis;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final ScheduledExecutorService syncer;
+    private int unsynced = 0;
+    private long firstUnsyncedMillis = 0;
+
+    /**
+     * URL fingerprints, zero for an empty slot, with each URL's state and
+     * content hash at the same index. A state's top bit says the URL
+     * succeeded; the rest count its failed attempts.
+     */
+    private long[] keys = new long[1024];
+    private byte[] states = new byte[1024];
+    private long[] contentHashes = new long[1024];
+    private int size = 0;
+
+    public static class RunJournalBuilder {
+        private File file;
+        private int maxAttempts = 3;
+        private int syncEvery = 1000;
+        private long syncMillis = 1000;
+
+        public RunJournalBuilder file(File file) {
+            this.file = file;
+            return this;
+        }
+
+        public RunJournalBuilder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public RunJournalBuilder syncEvery(int syncEvery) {
+            this.syncEvery = syncEvery;
+            return this;
+        }
+
+        public RunJournalBuilder syncMillis(long syncMillis) {
+            this.syncMillis = syncMillis;
+            return this;
+        }
+
+        public RunJournal build() throws IOException {
+            return new RunJournal(this);
+        }
+    }
+
+    private RunJournal(RunJournalBuilder builder) throws IOException {
+        this.maxAttempts = builder.maxAttempts;
+        this.syncEvery = Math.max(1, builder.syncEvery);
+        this.syncMillis = builder.syncMillis;
+        this.buffer = ByteBuffer.allocate(RECORD_BYTES * Math.min(this.syncEvery, 4096));
+        this.channel = FileChannel.open(builder.file.toPath(), StandardOpenOption.CREATE,
+                                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replay();
+        this.syncer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("run-journal-sync").build());
+        long period = Math.max(1, syncMillis);
+        syncer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    syncIfDue();
+                } catch (IOException e) {
+                    System.err.println("Failed to sync run journal");
+                    e.printStackTrace();
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private void replay() throws IOException {
+        long length = channel.size();
+        if (length < MAGIC.length) {
+            channel.truncate(0);
+            channel.write(ByteBuffer.wrap(MAGIC), 0);
+            channel.force(false);
+            channel.position(MAGIC.length);
+            return;
+        }
+        ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+        channel.read(magic, 0);
+        magic.flip();
+        if (!ByteBuffer.wrap(MAGIC).equals(magic))
+            throw new IOException("Not a handytrowel run journal");
+
+        long records = (length - MAGIC.length) / RECORD_BYTES;
+        long end = MAGIC.length + records * RECORD_BYTES;
+        ByteBuffer read = ByteBuffer.allocateDirect(RECORD_BYTES * 65536);
+        long position = MAGIC.length;
+        while (position < end) {
+            read.clear();
+            read.limit((int) Math.min(read.capacity(), end - position));
+            while (read.hasRemaining()) {
+                int n = channel.read(read, position + read.position());
+                if (n < 0)
+                    break;
+            }
+            read.flip();
+            position += read.limit();
+            while (read.remaining() >= RECORD_BYTES)
+                apply(read.getLong(), read.get(), read.getLong());
+        }
+        if (end != length)
+            channel.truncate(end);
+        channel.position(end);
+    }
+
+    /**
+     * Whether url still needs processing: it has neither succeeded nor used
+     * up its attempts.
+     */
+    public synchronized boolean shouldProcess(String url) {
+        int slot = slot(fingerprint(url));
+        if (keys[slot] == 0)
+            return true;
+        int state = states[slot] & 0xff;
+        return (state & 0x80) == 0 && state < maxAttempts;
+    }
+
+    /**
+     * The hash of url's content when it last succeeded, or 0 if it hasn't.
+     */
+    public synchronized long getContentHash(String url) {
+        int slot = slot(fingerprint(url));
+        return keys[slot] == 0 ? 0 : contentHashes[slot];
+    }
+
+    /**
+     * How many distinct URLs the journal has an outcome for.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Append the outcome of one attempt at url.
+     *
+     * @param content
+     *            what the attempt produced, for the content hash. May be
+     *            null.
+     */
+    public void record(String url, Outcome outcome, String content) throws IOException {
+        record(url, outcome, contentHash(content));
+    }
+
+    /**
+     * Append the outcome of one attempt at url, given the hash of what it
+     * produced as returned by {@link #contentHash(String)}.
+     */
+    public synchronized void record(String url, Outcome outcome, long contentHash) throws IOException {
+        long key = fingerprint(url);
+        byte code = (byte) outcome.ordinal();
+        apply(key, code, contentHash);
+
+        if (!buffer.hasRemaining())
+            flush();
+        buffer.putLong(key).put(code).putLong(contentHash);
+        if (unsynced++ == 0)
+            firstUnsyncedMillis = System.currentTimeMillis();
+        if (unsynced >= syncEvery)
+            sync();
+        else
+            syncIfDue();
+    }
+
+    private synchronized void syncIfDue() throws IOException {
+        if (unsynced > 0 && System.currentTimeMillis() - firstUnsyncedMillis >= syncMillis && channel.isOpen())
+            sync();
+    }
+
+    /**
+     * Force every appended record to disk.
+     */
+    public synchronized void sync() throws IOException {
+        flush();
+        channel.force(false);
+        unsynced = 0;
+    }
+
+    public synchronized void close() throws IOException {
+        syncer.shutdownNow();
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    private void apply(long key, byte code, long contentHash) {
+        int slot = slot(key);
+        if (keys[slot] == 0) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                grow();
+                slot = slot(key);
+            }
+        }
+        int state = states[slot] & 0xff;
+        if (code == Outcome.SUCCESS.ordinal()) {
+            state |= 0x80;
+            contentHashes[slot] = contentHash;
+        } else if ((state & 0x7f) < 0x7f) {
+            state++;
+        }
+        states[slot] = (byte) state;
+    }
+
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (keys[slot] != 0 && keys[slot] != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        byte[] oldStates = states;
+        long[] oldHashes = contentHashes;
+        keys = new long[oldKeys.length * 2];
+        states = new byte[keys.length];
+        contentHashes = new long[keys.length];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == 0)
+                continue;
+            int slot = slot(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            states[slot] = oldStates[i];
+            contentHashes[slot] = oldHashes[i];
+        }
+    }
+
+    /**
+     * The content hash journaled for content, which may be null.
+     */
+    public static long contentHash(String content) {
+        return content == null ? 0 : HASH.hashString(content, StandardCharsets.UTF_8).asLong();
+    }
+
+    private static long fingerprint(String url) {
+        long fingerprint = HASH.hashString(url, StandardCharsets.UTF_8).asLong();
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+}
@@ -0,0 +1,335 @@
+/** ========================================================================
+  * handytrowel: src/main/java/queue/WorkQueue.java
+  * Directory-based work queue shared by any number of worker processes.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.queue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A work queue that lives in a directory, so that any number of processes
+ * on any number of hosts sharing the directory can drain one job between
+ * them without a broker.
+ *
+ * URLs are submitted in shard files under pending/. A worker claims a
+ * shard by renaming it into claimed/ with its worker id appended; rename
+ * is atomic, so exactly one worker wins each shard. While it works on a
+ * shard the worker heartbeats by touching the claimed file's modification
+ * time. A claimed shard whose heartbeat is older than leaseMillis belongs
+ * to a worker that died, and is claimed again the same way, by renaming it
+ * to the new worker's name. Finished shards are moved to done/.
+ *
+ * Heartbeats compare modification times set by one host with the clock of
+ * another, so hosts sharing a queue should keep their clocks in sync to
+ * well within leaseMillis.
+ *
+ * @author Asim Ihsan
+ */
+public class WorkQueue {
+
+    private static final String SHARD_PREFIX = "shard-";
+    private static final String SHARD_SUFFIX = ".txt";
+
+    private final Path pending;
+    private final Path claimed;
+    private final Path done;
+    private final String workerId;
+
+    /**
+     * How long a claimed shard may go without a heartbeat before another
+     * worker may take it.
+     *
+     * The default value is 10 minutes.
+     */
+    private final long leaseMillis;
+
+    private final Set<Shard> held = new CopyOnWriteArraySet<>();
+    private ScheduledExecutorService heartbeats;
+
+    public static class WorkQueueBuilder {
+        private File directory;
+        private String workerId = ManagementFactory.getRuntimeMXBean().getName();
+        private long leaseMillis = 10 * 60 * 1000;
+
+        public WorkQueueBuilder directory(File directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        public WorkQueueBuilder workerId(String workerId) {
+            this.workerId = workerId;
+            return this;
+        }
+
+        public WorkQueueBuilder leaseMillis(long leaseMillis) {
+            this.leaseMillis = leaseMillis;
+            return this;
+        }
+
+        public WorkQueue build() throws IOException {
+            return new WorkQueue(this);
+        }
+    }
+
+    private WorkQueue(WorkQueueBuilder builder) throws IOException {
+        Path root = builder.directory.toPath();
+        this.pending = Files.createDirectories(root.resolve("pending"));
+        this.claimed = Files.createDirectories(root.resolve("claimed"));
+        this.done = Files.createDirectories(root.resolve("done"));
+        this.workerId = builder.workerId.replaceAll("[^A-Za-z0-9_.@-]", "_");
+        this.leaseMillis = builder.leaseMillis;
+    }
+
+    /**
+     * A shard claimed by this worker.
+     */
+    public final class Shard {
+        private final String name;
+        private volatile boolean lost = false;
+
+        private Shard(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        private Path claimedPath() {
+            return claimed.resolve(name + "." + workerId);
+        }
+
+        public List<String> getUrls() throws IOException {
+            List<String> urls = new ArrayList<>();
+            for (String line : Files.readAllLines(claimedPath(), StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (!line.isEmpty())
+                    urls.add(line);
+            }
+            return urls;
+        }
+
+        /**
+         * Whether another worker has taken this shard over, because a
+         * heartbeat was missed for longer than the lease.
+         */
+        public boolean isLost() {
+            return lost;
+        }
+
+        void heartbeat() {
+            try {
+                Files.setLastModifiedTime(claimedPath(), FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException e) {
+                lost = true;
+                held.remove(this);
+            }
+        }
+    }
+
+    /**
+     * This worker's name in the queue, safe to use in a file name.
+     */
+    public String getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * Split urls into shards of at most shardSize and add them to the queue.
+     *
+     * @return how many shards were written.
+     */
+    public int submit(List<String> urls, int shardSize) throws IOException {
+        int shards = 0;
+        for (int start = 0; start < urls.size(); start += shardSize) {
+            List<String> shard = urls.subList(start, Math.min(urls.size(), start + shardSize));
+            String name = String.format("%s%d-%06d-%s", SHARD_PREFIX, System.currentTimeMillis(), shards++, workerId);
+            Path temporary = pending.resolve("." + name + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                for (String url : shard) {
+                    writer.write(url);
+                    writer.write('\n');
+                }
+            }
+            moveAtomically(temporary, pending.resolve(name + SHARD_SUFFIX));
+        }
+        return shards;
+    }
+
+    /**
+     * Claim a pending shard, or failing that a claimed shard whose lease has
+     * expired. The shard is heartbeated until it is completed or released.
+     *
+     * @return the shard, or null if nothing is claimable right now.
+     */
+    public Shard claim() throws IOException {
+        for (Path path : list(pending)) {
+            String file = path.getFileName().toString();
+            if (!file.startsWith(SHARD_PREFIX) || !file.endsWith(SHARD_SUFFIX))
+                continue;
+            Shard shard = new Shard(file);
+            if (tryMove(path, shard.claimedPath()) && hold(shard))
+                return shard;
+        }
+        long now = System.currentTimeMillis();
+        for (Path path : list(claimed)) {
+            String file = path.getFileName().toString();
+            int owner = file.indexOf(SHARD_SUFFIX + ".");
+            if (owner < 0)
+                continue;
+            try {
+                if (now - Files.getLastModifiedTime(path).toMillis() < leaseMillis)
+                    continue;
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            Shard shard = new Shard(file.substring(0, owner + SHARD_SUFFIX.length()));
+            if (!path.equals(shard.claimedPath()) && tryMove(path, shard.claimedPath()) && hold(shard))
+                return shard;
+        }
+        return null;
+    }
+
+    /**
+     * Mark a shard finished.
+     *
+     * @return false if the shard was lost to another worker before it could
+     *         be completed, in which case that worker will process it again.
+     */
+    public boolean complete(Shard shard) throws IOException {
+        held.remove(shard);
+        return !shard.isLost() && tryMove(shard.claimedPath(), done.resolve(shard.getName()));
+    }
+
+    /**
+     * Give a shard back to the queue unfinished.
+     */
+    public void release(Shard shard) throws IOException {
+        held.remove(shard);
+        if (!shard.isLost())
+            tryMove(shard.claimedPath(), pending.resolve(shard.getName()));
+    }
+
+    /**
+     * Whether every submitted shard is done.
+     */
+    public boolean isDrained() throws IOException {
+        return countShards(pending) == 0 && countShards(claimed) == 0;
+    }
+
+    /**
+     * Stop heartbeating. Shards still held will be reclaimed by other
+     * workers once their leases expire.
+     */
+    public synchronized void close() {
+        if (heartbeats != null)
+            heartbeats.shutdownNow();
+        held.clear();
+    }
+
+    /**
+     * Start heartbeating a shard just renamed to this worker.
+     *
+     * @return false if another worker renamed it away again before the
+     *         first heartbeat, so it is already lost.
+     */
+    private boolean hold(Shard shard) {
+        shard.heartbeat();
+        if (shard.isLost())
+            return false;
+        held.add(shard);
+        startHeartbeats();
+        return true;
+    }
+
+    private synchronized void startHeartbeats() {
+        if (heartbeats != null)
+            return;
+        heartbeats = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("work-queue-heartbeat").build());
+        long period = Math.max(1, leaseMillis / 4);
+        heartbeats.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                for (Shard shard : held)
+                    shard.heartbeat();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SHARD_PREFIX + "*")) {
+            for (Path path : stream)
+                paths.add(path);
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    private static int countShards(Path directory) throws IOException {
+        return list(directory).size();
+    }
+
+    /**
+     * Rename source to target, failing if another worker got there first.
+     */
+    private static boolean tryMove(Path source, Path target) throws IOException {
+        try {
+            moveAtomically(source, target);
+            return true;
+        } catch (NoSuchFileException | FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target);
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+// Installed into the PhantomJS page by RenderWaiter. Runs in PhantomJS's
+// own context, where "this" is the page. Tracks network activity so the
+// waiter can tell when the page has gone quiet. Existing handlers, e.g.
+// the one from resource_filter.js, are chained rather than replaced.
+var page = this;
+var monitor = page.handytrowelMonitor = {requested: 0, finished: 0, lastActivity: Date.now()};
+
+function chain(name, handler) {
+    var previous = page[name];
+    page[name] = function () {
+        if (typeof previous === "function") {
+            previous.apply(this, arguments);
+        }
+        handler.apply(this, arguments);
+    };
+}
+
+chain("onResourceRequested", function () {
+    monitor.requested++;
+    monitor.lastActivity = Date.now();
+});
+chain("onResourceReceived", function (response) {
+    if (response.stage === "end") {
+        monitor.finished++;
+    }
+    monitor.lastActivity = Date.now();
+});
+chain("onResourceError", function () {
+    monitor.finished++;
+    monitor.lastActivity = Date.now();
+});
+chain("onResourceTimeout", function () {
+    monitor.finished++;
+    monitor.lastActivity = Date.now();
+});
@@ -0,0 +1,21 @@
+// Polled by RenderWaiter. Runs in PhantomJS's own context, where "this" is
+// the page, and returns a snapshot of the DOM and of network activity.
+var monitor = this.handytrowelMonitor;
+var state = this.evaluate(function () {
+    var body = document.body;
+    var paragraphChars = 0;
+    var paragraphs = document.getElementsByTagName("p");
+    for (var i = 0; i < paragraphs.length; i++) {
+        paragraphChars += (paragraphs[i].textContent || "").length;
+    }
+    return {
+        url: location.href,
+        readyState: document.readyState,
+        elements: document.getElementsByTagName("*").length,
+        textLength: body ? (body.textContent || "").length : 0,
+        paragraphChars: paragraphChars
+    };
+});
+state.inflight = monitor.requested - monitor.finished;
+state.idleMillis = Date.now() - monitor.lastActivity;
+return state;
@@ -0,0 +1,149 @@
+// Installed into the PhantomJS page by ResourceFilter. Runs in PhantomJS's
+// own context, where "this" is the page and arguments[0] is the filter
+// configuration built by ResourceFilter.
+var page = this;
+var config = arguments[0];
+var stats = page.handytrowelResourceStats = {allowed: 0, blocked: 0};
+var firstRequest = true;
+
+// Main-frame navigations we expect next: redirect targets of the page's
+// own document requests, and navigations PhantomJS reports for the main
+// frame (meta refresh, location changes). These are the page itself, e.g.
+// a t.co or feedproxy link redirecting to the publisher, so they are never
+// blocked even though they look like third-party "other" requests.
+var expectedNavigations = {};
+var documentRequests = {};
+
+function contains(list, value) {
+    return list.indexOf(value) !== -1;
+}
+
+function hostOf(url) {
+    var match = /^[a-z][a-z0-9+.\-]*:\/\/(?:[^\/?#@]*@)?([^\/?#:]+)/i.exec(url);
+    return match ? match[1].toLowerCase() : "";
+}
+
+// Approximates the registrable domain, i.e. "www.bbc.co.uk" -> "bbc.co.uk".
+function siteOf(host) {
+    var labels = host.split(".");
+    var keep = 2;
+    if (labels.length > 2 && labels[labels.length - 1].length === 2 &&
+            labels[labels.length - 2].length <= 3) {
+        keep = 3;
+    }
+    return labels.slice(-keep).join(".");
+}
+
+function headerValue(requestData, name) {
+    var headers = requestData.headers || [];
+    for (var i = 0; i < headers.length; i++) {
+        if (headers[i].name.toLowerCase() === name) {
+            return headers[i].value.toLowerCase();
+        }
+    }
+    return "";
+}
+
+function resourceType(requestData) {
+    var path = requestData.url.split("#")[0].split("?")[0].toLowerCase();
+    var accept = headerValue(requestData, "accept");
+    if (/\.css$/.test(path) || accept.indexOf("text/css") === 0) {
+        return "stylesheet";
+    }
+    if (/\.(woff2?|ttf|otf|eot)$/.test(path)) {
+        return "font";
+    }
+    if (/\.(png|jpe?g|gif|webp|svg|ico|bmp)$/.test(path) || accept.indexOf("image/") === 0) {
+        return "image";
+    }
+    if (/\.(mp4|webm|ogg|ogv|mp3|m4a|wav|flv|swf)$/.test(path)) {
+        return "media";
+    }
+    if (/\.js$/.test(path)) {
+        return "script";
+    }
+    return "other";
+}
+
+function blockedDomain(host) {
+    for (var i = 0; i < config.blockedDomains.length; i++) {
+        var domain = config.blockedDomains[i];
+        if (host === domain ||
+                host.substr(host.length - domain.length - 1) === "." + domain) {
+            return true;
+        }
+    }
+    return false;
+}
+
+var pageSite = siteOf(hostOf(config.pageUrl));
+
+function withoutFragment(url) {
+    return url.split("#")[0];
+}
+
+function isNavigation(requestData) {
+    return firstRequest || requestData.isMainFrame === true ||
+        expectedNavigations.hasOwnProperty(withoutFragment(requestData.url));
+}
+
+function shouldBlock(requestData) {
+    if (/^data:/i.test(requestData.url)) {
+        return false;
+    }
+    var host = hostOf(requestData.url);
+    if (blockedDomain(host)) {
+        return true;
+    }
+    var type = resourceType(requestData);
+    if (contains(config.blockedTypes, type)) {
+        return true;
+    }
+    return siteOf(host) !== pageSite && contains(config.blockedThirdPartyTypes, type);
+}
+
+page.onResourceRequested = function (requestData, networkRequest) {
+    // Never block the page itself, and judge third parties against the
+    // site it has ended up on after any redirects.
+    if (isNavigation(requestData)) {
+        firstRequest = false;
+        delete expectedNavigations[withoutFragment(requestData.url)];
+        documentRequests[requestData.id] = true;
+        pageSite = siteOf(hostOf(requestData.url));
+        stats.allowed++;
+        return;
+    }
+    if (shouldBlock(requestData)) {
+        stats.blocked++;
+        networkRequest.abort();
+    } else {
+        stats.allowed++;
+    }
+};
+
+// Location headers may be relative to the URL that redirected.
+function resolve(base, url) {
+    if (/^[a-z][a-z0-9+.\-]*:/i.test(url)) {
+        return url;
+    }
+    var origin = /^[a-z][a-z0-9+.\-]*:\/\/[^\/?#]*/i.exec(base)[0];
+    if (url.indexOf("//") === 0) {
+        return base.split(":")[0] + ":" + url;
+    }
+    if (url.charAt(0) === "/") {
+        return origin + url;
+    }
+    return withoutFragment(base).split("?")[0].replace(/[^\/]*$/, "") + url;
+}
+
+page.onResourceReceived = function (response) {
+    if (response.redirectURL && documentRequests.hasOwnProperty(response.id)) {
+        expectedNavigations[withoutFragment(resolve(response.url, response.redirectURL))] = true;
+    }
+};
+
+page.onNavigationRequested = function (url, type, willNavigate, main) {
+    if (main && willNavigate) {
+        expectedNavigations[withoutFragment(url)] = true;
+    }
+};
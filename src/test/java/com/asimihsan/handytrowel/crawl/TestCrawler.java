@@ -0,0 +1,84 @@
+/** ========================================================================
+  * handytrowel: src/test/java/crawl/TestCrawler.java
+  * Tests for crawler link normalization.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.crawl;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asimihsan.handytrowel.crawl.Crawler.CrawlerBuilder;
+import com.asimihsan.handytrowel.pipeline.BatchRunner;
+import com.asimihsan.handytrowel.pipeline.BatchRunner.BatchRunnerBuilder;
+import com.asimihsan.handytrowel.pipeline.RunJournal;
+import com.asimihsan.handytrowel.pipeline.RunJournal.RunJournalBuilder;
+
+public class TestCrawler {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testResolvesAndDropsFragment() {
+        assertEquals("http://example.com/a/c", Crawler.normalize("http://example.com/a/b", "c#top"));
+        assertEquals("https://example.com:8443/", Crawler.normalize(null, "HTTPS://Example.COM:8443#x"));
+        assertEquals("http://user@example.com/x?y=1", Crawler.normalize(null, "http://user@EXAMPLE.com/x?y=1"));
+        assertNull(Crawler.normalize("http://example.com/", "mailto:someone@example.com"));
+        assertNull(Crawler.normalize(null, "/relative"));
+    }
+
+    @Test
+    public void testKeepsPercentEscapes() {
+        assertEquals("http://example.com/search?q=a%26b&x=1",
+                     Crawler.normalize(null, "http://example.com/search?q=a%26b&x=1"));
+        assertEquals("http://example.com/a%2Fb/c", Crawler.normalize(null, "http://example.com/a%2Fb/c"));
+        assertEquals("http://example.com/wiki/C%2B%2B", Crawler.normalize("http://example.com/wiki/", "C%2B%2B"));
+        assertEquals("http://example.com/r?u=http%3A%2F%2Ffoo.com%2F%3Fa%3D1",
+                     Crawler.normalize(null, "http://example.com/r?u=http%3A%2F%2Ffoo.com%2F%3Fa%3D1#frag"));
+        assertNotEquals(Crawler.normalize(null, "http://example.com/a%2Fb"),
+                        Crawler.normalize(null, "http://example.com/a/b"));
+    }
+
+    @Test
+    public void testSkipsJournaledPagesWithoutFetching() throws IOException, InterruptedException {
+        RunJournal journal = new RunJournalBuilder().file(folder.newFile("journal")).build();
+        journal.record("http://example.com/", RunJournal.Outcome.SUCCESS, "done");
+        // No pipeline: fetching anything would fail the test.
+        BatchRunner runner = new BatchRunnerBuilder().journal(journal).build();
+        Crawler crawler = new CrawlerBuilder()
+        .runner(runner)
+        .frontier(new Frontier(8, folder.newFolder("frontier")))
+        .build();
+
+        assertEquals(0, crawler.crawl(Arrays.asList("http://EXAMPLE.com")));
+        assertEquals(1, runner.getSkipped());
+        assertEquals(0, runner.getFailures());
+        journal.close();
+    }
+
+}
@@ -0,0 +1,82 @@
+/** ========================================================================
+  * handytrowel: src/test/java/crawl/TestFrontier.java
+  * Tests for the crawl frontier, seen-URL set and link normalization.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.crawl;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestFrontier {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testKeepsOrderAcrossSpills() throws IOException {
+        Frontier frontier = new Frontier(8, folder.getRoot());
+        for (int i = 0; i < 100; i++)
+            frontier.add(new Frontier.Entry("http://example.com/" + i, i % 3));
+        assertEquals(100, frontier.size());
+        assertTrue(frontier.getSpilledChunks() > 0);
+        for (int i = 0; i < 50; i++)
+            assertEquals("http://example.com/" + i, frontier.poll().getUrl());
+        for (int i = 100; i < 120; i++)
+            frontier.add(new Frontier.Entry("http://example.com/" + i, 0));
+        for (int i = 50; i < 120; i++) {
+            Frontier.Entry entry = frontier.poll();
+            assertEquals("http://example.com/" + i, entry.getUrl());
+            assertEquals(i < 100 ? i % 3 : 0, entry.getDepth());
+        }
+        assertNull(frontier.poll());
+        assertTrue(frontier.isEmpty());
+        assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testSeenUrls() {
+        SeenUrls seen = new SeenUrls(16);
+        for (int i = 0; i < 1000; i++)
+            assertTrue(seen.add("http://example.com/" + i));
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(seen.add("http://example.com/" + i));
+            assertTrue(seen.contains("http://example.com/" + i));
+        }
+        assertFalse(seen.contains("http://example.com/1000"));
+        assertEquals(1000, seen.size());
+    }
+
+    @Test
+    public void testNormalizesLinks() {
+        assertEquals("http://example.com/a/c?x=1",
+                     Crawler.normalize("http://Example.com/a/b", "c?x=1#top"));
+        assertEquals("https://example.com/", Crawler.normalize(null, "HTTPS://example.com"));
+        assertNull(Crawler.normalize("http://example.com/", "mailto:someone@example.com"));
+        assertNull(Crawler.normalize("http://example.com/", "javascript:void(0)"));
+    }
+
+}
@@ -0,0 +1,97 @@
+/** ========================================================================
+  * handytrowel: src/test/java/extraction/TestHTMLPreScanner.java
+  * Tests for stripping script, style, SVG and comments before parsing.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.extraction;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.asimihsan.handytrowel.network.FetchedPage;
+
+public class TestHTMLPreScanner {
+
+    private static String strip(String html) {
+        FetchedPage page = HTMLPreScanner.strip(FetchedPage.fromString("http://example.com/", html));
+        return new String(page.getContent(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testStripsRegionsButKeepsTags() {
+        assertEquals("<p>a</p><script src=\"x.js\"></script><p>b</p>",
+                     strip("<p>a</p><script src=\"x.js\">var x = '</p>';</script><p>b</p>"));
+        assertEquals("<STYLE type='a>b'></STYLE>", strip("<STYLE type='a>b'>p { color: red }</STYLE>"));
+        assertEquals("<script type=\"application/ld+json\"></script >",
+                     strip("<script type=\"application/ld+json\">{\"@type\": \"NewsArticle\"}</script >"));
+        assertEquals("<svg viewBox=\"0 0 1 1\"></svg>x",
+                     strip("<svg viewBox=\"0 0 1 1\"><svg><path d=\"M0\"/></svg><text>t</text></svg>x"));
+        assertEquals("<svg/><p>x</p>", strip("<svg/><p>x</p>"));
+        assertEquals("a b", strip("a <!-- <p>hidden</p> -->b"));
+        assertEquals("<scripted>x</scripted><svgs>y</svgs>", strip("<scripted>x</scripted><svgs>y</svgs>"));
+        assertEquals("a <!-- open <!-- still", strip("a <!-- open <!-- still"));
+        assertEquals("<p>x</p><script>", strip("<p>x</p><script>never closed"));
+    }
+
+    @Test
+    public void testReportsBytesSaved() {
+        String html = "<p>a</p><script>12345</script>";
+        FetchedPage page = FetchedPage.fromString("http://example.com/", html);
+        FetchedPage stripped = HTMLPreScanner.strip(page);
+        assertEquals(5, stripped.getStrippedBytes());
+        assertEquals(html.length() - 5, stripped.length());
+
+        FetchedPage plain = FetchedPage.fromString("http://example.com/", "<p>a</p>");
+        assertSame(plain, HTMLPreScanner.strip(plain));
+        FetchedPage utf16 = new FetchedPage("http://example.com/", html.getBytes(StandardCharsets.UTF_16),
+                                            StandardCharsets.UTF_16);
+        assertSame(utf16, HTMLPreScanner.strip(utf16));
+    }
+
+    @Test
+    public void testExtractionIsUnchanged() throws Exception {
+        StringBuilder html = new StringBuilder("<html><head><title>Polio</title>");
+        html.append("<style>body { font: 12px serif; } .nav > a { color: blue }</style>");
+        html.append("<script type=\"application/ld+json\">{\"headline\": \"Polio returns\"}</script>");
+        html.append("<!-- analytics --></head><body><div class=\"nav\"><a href=\"/\">Home</a></div>");
+        for (int i = 0; i < 6; i++) {
+            html.append("<p>Alarmed by the spread of polio to several fragile countries, the World Health ")
+            .append("Organization declared a global emergency, and <a href=\"/story/").append(i)
+            .append("\">officials said</a> vaccination teams would travel to every village.</p>")
+            .append("<script>window.ads = window.ads || []; ads.push({slot: ").append(i).append("});</script>")
+            .append("<svg width=\"10\" height=\"10\"><path d=\"M0 0L10 10\"/></svg><!-- ad slot -->");
+        }
+        html.append("<div>Copyright</div></body></html>");
+
+        FetchedPage page = FetchedPage.fromString("http://example.com/", html.toString());
+        FetchedPage stripped = HTMLPreScanner.strip(page);
+        assertTrue(stripped.getStrippedBytes() > 0);
+        ExtractedArticle before = ArticleProcessor.INSTANCE.process(page);
+        ExtractedArticle after = ArticleProcessor.INSTANCE.process(stripped);
+        assertEquals(before.getBody(), after.getBody());
+        assertEquals(before.getLinks(), after.getLinks());
+        assertFalse(after.getLinks().isEmpty());
+    }
+
+}
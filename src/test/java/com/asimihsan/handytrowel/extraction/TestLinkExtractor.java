@@ -0,0 +1,99 @@
+/** ========================================================================
+  * handytrowel: src/test/java/extraction/TestLinkExtractor.java
+  * Tests for link extraction with reused per-thread parsers.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.extraction;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import de.l3s.boilerpipe.document.TextDocument;
+import de.l3s.boilerpipe.extractors.ArticleExtractor;
+import de.l3s.boilerpipe.sax.BoilerpipeSAXInput;
+
+public class TestLinkExtractor {
+
+    private static String article(String name) {
+        StringBuilder html = new StringBuilder("<html><head><title>" + name + "</title></head><body>");
+        html.append("<div><a href=\"http://example.com/nav\">Home</a></div>");
+        for (int i = 0; i < 5; i++) {
+            html.append("<p>The health organization said on Monday that the campaign in ")
+            .append(name).append(" would continue through the summer, and that <a href=\"http://example.com/")
+            .append(name).append("/").append(i).append("\">the report</a> described how vaccination teams ")
+            .append("reached villages that had been cut off for most of the year by flooding and conflict.</p>");
+        }
+        html.append("</body></html>");
+        return html.toString();
+    }
+
+    private static List<String> links(String html) throws Exception {
+        TextDocument doc = new BoilerpipeSAXInput(new InputSource(new StringReader(html))).getTextDocument();
+        ArticleExtractor.INSTANCE.process(doc);
+        return LinkExtractor.INSTANCE.process(doc, html);
+    }
+
+    @Test
+    public void testReusedParserStartsClean() throws Exception {
+        List<String> first = links(article("kabul"));
+        assertEquals(Arrays.asList("http://example.com/kabul/0", "http://example.com/kabul/1",
+                                   "http://example.com/kabul/2", "http://example.com/kabul/3",
+                                   "http://example.com/kabul/4"), first);
+        List<String> second = links(article("lagos"));
+        assertEquals(5, second.size());
+        assertEquals("http://example.com/lagos/0", second.get(0));
+        assertEquals(first, links(article("kabul")));
+    }
+
+    @Test
+    public void testConcurrentCallers() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<List<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            final String name = "town" + i;
+            futures.add(executor.submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws Exception {
+                    return links(article(name));
+                }
+            }));
+        }
+        for (int i = 0; i < 40; i++) {
+            List<String> links = futures.get(i).get();
+            assertEquals(5, links.size());
+            for (String link : links)
+                assertTrue(link.startsWith("http://example.com/town" + i + "/"));
+        }
+        executor.shutdown();
+    }
+
+}
@@ -0,0 +1,230 @@
+/** ========================================================================
+  * handytrowel: src/test/java/graph/TestLinkGraph.java
+  * Tests for the on-disk link graph.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.graph;
+
+import static org.junit.Assert.*;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asimihsan.handytrowel.graph.LinkGraphSink.LinkGraphSinkBuilder;
+import com.asimihsan.handytrowel.pipeline.ArticleRecord;
+
+public class TestLinkGraph {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ArticleRecord record(String url, String... links) {
+        ArticleRecord record = new ArticleRecord(url);
+        record.setLinks(Arrays.asList(links));
+        return record;
+    }
+
+    @Test
+    public void testOutAndInLinks() throws IOException {
+        File directory = folder.newFolder("graph");
+        try (LinkGraphSink sink = new LinkGraphSinkBuilder().directory(directory).build()) {
+            sink.write(record("http://example.com/a", "/b", "http://example.com/c#top",
+                              "http://example.com/c", "/a", "mailto:someone@example.com"));
+            sink.write(record("http://example.com/b", "http://EXAMPLE.com/a"));
+        }
+
+        try (LinkGraph graph = new LinkGraph(directory)) {
+            assertEquals(3, graph.nodeCount());
+            assertEquals(3, graph.edgeCount());
+            assertEquals(Arrays.asList("http://example.com/b", "http://example.com/c"),
+                         graph.outLinks("http://example.com/a"));
+            assertEquals(Arrays.asList("http://example.com/a"),
+                         graph.inLinks("http://example.com/b"));
+            assertEquals(Arrays.asList("http://example.com/b"),
+                         graph.inLinks("http://example.com/a"));
+            assertEquals(0, graph.outDegree(graph.id("http://example.com/c")));
+            assertEquals(1, graph.inDegree(graph.id("http://example.com/c")));
+            assertEquals(-1, graph.id("http://example.com/missing"));
+            assertTrue(graph.outLinks("http://example.com/missing").isEmpty());
+
+            DegreeStats out = graph.outDegreeStats();
+            assertEquals(3, out.getNodes());
+            assertEquals(3, out.getEdges());
+            assertEquals(2, out.getMax());
+            assertEquals(1, out.getZero());
+            assertEquals(1.0, out.getMean(), 1e-9);
+        }
+    }
+
+    @Test
+    public void testAddsToExistingGraph() throws IOException {
+        File directory = folder.newFolder("graph");
+        try (LinkGraphSink sink = new LinkGraphSinkBuilder().directory(directory).build()) {
+            sink.write(record("http://example.com/a", "/b"));
+        }
+        try (LinkGraphSink sink = new LinkGraphSinkBuilder().directory(directory).build()) {
+            sink.write(record("http://example.com/b", "/c"));
+        }
+        try (LinkGraph graph = new LinkGraph(directory)) {
+            assertEquals(3, graph.nodeCount());
+            assertEquals(2, graph.edgeCount());
+            assertEquals(Arrays.asList("http://example.com/c"), graph.outLinks("http://example.com/b"));
+        }
+    }
+
+    @Test
+    public void testMatchesInMemoryGraphAcrossManyRuns() throws IOException {
+        File directory = folder.newFolder("graph");
+        Random random = new Random(7);
+        int pages = 500;
+        Set<Long> expected = new HashSet<>();
+        try (LinkGraphSink sink = new LinkGraphSinkBuilder().directory(directory).runEdges(100).build()) {
+            for (int page = 0; page < pages; page++) {
+                String[] links = new String[random.nextInt(20)];
+                for (int i = 0; i < links.length; i++) {
+                    int target = random.nextInt(pages);
+                    links[i] = "/p" + target;
+                    if (target != page)
+                        expected.add((long) page << 32 | target);
+                }
+                sink.write(record("http://example.com/p" + page, links));
+            }
+        }
+
+        try (LinkGraph graph = new LinkGraph(directory)) {
+            assertEquals(expected.size(), graph.edgeCount());
+            long inDegrees = 0;
+            for (int id = 0; id < graph.nodeCount(); id++) {
+                int page = Integer.parseInt(graph.url(id).substring("http://example.com/p".length()));
+                int[] out = graph.outLinks(id);
+                assertEquals(out.length, graph.outDegree(id));
+                for (int i = 0; i < out.length; i++) {
+                    if (i > 0)
+                        assertTrue(out[i - 1] < out[i]);
+                    int target = Integer.parseInt(graph.url(out[i]).substring("http://example.com/p".length()));
+                    assertTrue(expected.contains((long) page << 32 | target));
+                }
+                for (int from : graph.inLinks(id))
+                    assertTrue(Arrays.binarySearch(graph.outLinks(from), id) >= 0);
+                inDegrees += graph.inDegree(id);
+            }
+            assertEquals(expected.size(), inDegrees);
+        }
+    }
+
+    @Test
+    public void testDropsEdgesLeftByCrash() throws IOException {
+        File directory = folder.newFolder("graph");
+        try (LinkGraphSink sink = new LinkGraphSinkBuilder().directory(directory).build()) {
+            sink.write(record("http://example.com/a", "/b"));
+        }
+        // Edges to IDs the dictionary never got, then half an edge.
+        try (DataOutputStream out = new DataOutputStream(
+                    new FileOutputStream(new File(directory, LinkGraphSink.EDGES_FILE), true))) {
+            out.writeInt(0);
+            out.writeInt(2);
+            out.writeInt(7);
+            out.writeInt(1);
+            out.writeInt(1);
+        }
+
+        try (LinkGraphSink sink = new LinkGraphSinkBuilder().directory(directory).build()) {
+            assertEquals(8, new File(directory, LinkGraphSink.EDGES_FILE).length());
+            sink.write(record("http://example.com/b", "/c"));
+        }
+        try (LinkGraph graph = new LinkGraph(directory)) {
+            assertEquals(3, graph.nodeCount());
+            assertEquals(2, graph.edgeCount());
+            assertEquals(Arrays.asList("http://example.com/b"), graph.outLinks("http://example.com/a"));
+            assertEquals(Arrays.asList("http://example.com/c"), graph.outLinks("http://example.com/b"));
+        }
+    }
+
+    @Test
+    public void testOpeningGraphWritesNothing() throws IOException {
+        File directory = folder.newFolder("graph");
+        try (LinkGraphSink sink = new LinkGraphSinkBuilder().directory(directory).build()) {
+            sink.write(record("http://example.com/a", "/b"));
+        }
+        File[] files = directory.listFiles();
+        long[] lengths = new long[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lengths[i] = files[i].length();
+            assertTrue(files[i].setLastModified(1000000000000L));
+        }
+
+        try (LinkGraph graph = new LinkGraph(directory)) {
+            assertEquals(1, graph.id("http://example.com/b"));
+            assertEquals("http://example.com/a", graph.url(0));
+            assertEquals(Arrays.asList("http://example.com/b"), graph.outLinks("http://example.com/a"));
+        }
+
+        assertEquals(new HashSet<>(Arrays.asList(files)), new HashSet<>(Arrays.asList(directory.listFiles())));
+        for (int i = 0; i < files.length; i++) {
+            assertEquals(lengths[i], files[i].length());
+            assertEquals(1000000000000L, files[i].lastModified());
+        }
+    }
+
+    @Test
+    public void testReadOnlyDictionaryRejectsIntern() throws IOException {
+        File directory = folder.newFolder("urls");
+        try (UrlDictionary dictionary = new UrlDictionary(directory)) {
+            dictionary.intern("http://example.com/a");
+        }
+        try (UrlDictionary dictionary = UrlDictionary.openReadOnly(directory)) {
+            assertEquals(1, dictionary.size());
+            assertEquals(0, dictionary.id("http://example.com/a"));
+            dictionary.intern("http://example.com/b");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMappedFileReadsAcrossChunks() throws IOException {
+        File file = folder.newFile("longs");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeByte(7);
+            for (long i = 0; i < 100; i++)
+                out.writeLong(i * 0x0101010101010101L);
+        }
+        // 16-byte chunks, so most longs straddle a chunk boundary.
+        try (MappedFile mapped = new MappedFile(file, 4)) {
+            assertEquals(801, mapped.size());
+            assertEquals(7, mapped.get(0));
+            for (long i = 0; i < 100; i++)
+                assertEquals(i * 0x0101010101010101L, mapped.getLong(1 + i * 8));
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+/** ========================================================================
+  * handytrowel: src/test/java/index/TestLuceneIndexSink.java
+  * Tests for writing articles to, and searching, a Lucene index.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.index;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asimihsan.handytrowel.index.LuceneIndexSink.LuceneIndexSinkBuilder;
+import com.asimihsan.handytrowel.nlp.TextAnalyzer.TextAnalyzerBuilder;
+import com.asimihsan.handytrowel.pipeline.ArticleRecord;
+
+public class TestLuceneIndexSink {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ArticleRecord record(String url, String body, String... tokens) {
+        ArticleRecord record = new ArticleRecord(url);
+        record.setExtractedBody(body);
+        record.setTokens(Arrays.asList(tokens));
+        record.setLinks(Arrays.asList("http://example.com/cited"));
+        return record;
+    }
+
+    @Test
+    public void testIndexAndSearch() throws IOException {
+        File directory = folder.newFolder("index");
+        LuceneIndexSink sink = new LuceneIndexSinkBuilder()
+        .directory(directory)
+        .commitEvery(1)
+        .build();
+        sink.write(record("http://example.com/polio", "Polio vaccination campaign",
+                          "polio", "vaccin", "campaign"));
+        sink.write(record("http://example.com/weather", "Heavy rain expected",
+                          "heavi", "rain", "expect"));
+        sink.close();
+
+        try (ArticleSearcher searcher = new ArticleSearcher(directory)) {
+            List<SearchHit> hits = searcher.search("vaccination", 10);
+            assertEquals(1, hits.size());
+            assertEquals("http://example.com/polio", hits.get(0).getUrl());
+            assertEquals("Polio vaccination campaign", hits.get(0).getExcerpt());
+        }
+    }
+
+    @Test
+    public void testQueryAnalyzedInItsLanguage() throws IOException {
+        File directory = folder.newFolder("index");
+        String body = "Die Impfungen gegen Kinderl\u00e4hmung wurden in mehreren L\u00e4ndern fortgesetzt.";
+        List<String> tokens = new TextAnalyzerBuilder().body(body).language("de").build().analyze().getTokens();
+        LuceneIndexSink sink = new LuceneIndexSinkBuilder().directory(directory).build();
+        sink.write(record("http://example.com/impfung", body, tokens.toArray(new String[tokens.size()])));
+        sink.close();
+
+        try (ArticleSearcher searcher = new ArticleSearcher(directory)) {
+            // Only the German stemmer takes "L\u00e4ndern" to the indexed stem.
+            assertEquals(1, searcher.search("L\u00e4ndern", "de", 10).size());
+            assertTrue(searcher.search("L\u00e4ndern", "en", 10).isEmpty());
+            assertEquals(1, searcher.search("Wir wollen wissen, wie es in den L\u00e4ndern weitergeht, " +
+                                            "und was wir dagegen tun k\u00f6nnen.", 10).size());
+        }
+    }
+
+    @Test
+    public void testReindexReplacesUrl() throws IOException {
+        File directory = folder.newFolder("index");
+        LuceneIndexSink sink = new LuceneIndexSinkBuilder().directory(directory).build();
+        sink.write(record("http://example.com/a", "first", "polio"));
+        sink.close();
+        sink = new LuceneIndexSinkBuilder().directory(directory).build();
+        sink.write(record("http://example.com/a", "second", "polio"));
+        sink.close();
+
+        try (ArticleSearcher searcher = new ArticleSearcher(directory)) {
+            List<SearchHit> hits = searcher.search("polio", 10);
+            assertEquals(1, hits.size());
+            assertEquals("second", hits.get(0).getExcerpt());
+        }
+    }
+
+    @Test
+    public void testAbortedNotIndexed() throws IOException {
+        File directory = folder.newFolder("index");
+        LuceneIndexSink sink = new LuceneIndexSinkBuilder().directory(directory).build();
+        ArticleRecord aborted = record("http://example.com/big", "big", "polio");
+        aborted.setAborted("pageBytes");
+        sink.write(aborted);
+        sink.close();
+
+        try (ArticleSearcher searcher = new ArticleSearcher(directory)) {
+            assertTrue(searcher.search("polio", 10).isEmpty());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/** ========================================================================
+  * handytrowel: src/test/java/loadtest/TestLoadTest.java
+  * Tests for load-test runs against the synthetic site.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.loadtest;
+
+import static org.junit.Assert.*;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.junit.Test;
+
+import com.asimihsan.handytrowel.loadtest.SyntheticSite.SyntheticSiteBuilder;
+import com.asimihsan.handytrowel.network.HTMLFetcher.HTMLFetcherBuilder;
+import com.asimihsan.handytrowel.pipeline.ArticlePipeline;
+import com.asimihsan.handytrowel.pipeline.ArticlePipeline.ArticlePipelineBuilder;
+
+/**
+ * Needs PhantomJS on the PATH, like TestHTMLFetcher.
+ */
+public class TestLoadTest {
+
+    @Test
+    public void testErrorPagesCountAsFailed() throws Exception {
+        SyntheticSite site = new SyntheticSiteBuilder().pages(40).pageBytes(2000).errorFraction(0.25).build();
+        site.start();
+        try {
+            int errors = 0;
+            for (String url : site.pageUrls()) {
+                HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+                if (connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+                    errors++;
+                connection.disconnect();
+            }
+            assertTrue("errors: " + errors, errors > 0 && errors < 40);
+
+            ArticlePipeline pipeline = new ArticlePipelineBuilder()
+            .fetcher(new HTMLFetcherBuilder().build())
+            .build();
+            LoadTestReport report = LoadTest.run(pipeline, site, site.pageUrls(), 4);
+            assertEquals(errors, report.getFailed());
+            assertEquals(40 - errors, report.getSucceeded());
+        } finally {
+            site.stop();
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/** ========================================================================
+  * handytrowel: src/test/java/loadtest/TestSyntheticSite.java
+  * Tests for the synthetic load-test site and report percentiles.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.loadtest;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.asimihsan.handytrowel.extraction.ArticleProcessor;
+import com.asimihsan.handytrowel.extraction.ExtractedArticle;
+import com.asimihsan.handytrowel.loadtest.SyntheticSite.SyntheticSiteBuilder;
+import com.asimihsan.handytrowel.network.FetchedPage;
+import com.google.common.io.ByteStreams;
+
+public class TestSyntheticSite {
+
+    private static String get(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+            return null;
+        try (InputStream in = connection.getInputStream()) {
+            return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testServesDeterministicArticles() throws Exception {
+        SyntheticSite site = new SyntheticSiteBuilder().pages(50).pageBytes(5000).links(7).seed(3).build();
+        site.start();
+        try {
+            String html = get(site.pageUrl(12));
+            assertEquals(site.render(12), html);
+            assertEquals(html, get(site.pageUrl(12)));
+            assertNotEquals(html, get(site.pageUrl(13)));
+            assertNull(get(site.pageUrl(50)));
+            assertTrue(html.length() > 5000);
+
+            ExtractedArticle article = ArticleProcessor.INSTANCE.process(
+                FetchedPage.fromString(site.pageUrl(12), html));
+            List<String> articleLinks = new ArrayList<>();
+            for (String link : article.getLinks()) {
+                if (link.startsWith("/page/"))
+                    articleLinks.add(link);
+            }
+            assertEquals(7, articleLinks.size());
+            assertTrue(article.getBody().length() > 4000);
+        } finally {
+            site.stop();
+        }
+    }
+
+    @Test
+    public void testFailureAndJavaScriptModes() throws Exception {
+        SyntheticSite site = new SyntheticSiteBuilder().pages(200).errorFraction(0.25).jsRenderedFraction(1).build();
+        site.start();
+        try {
+            int errors = 0;
+            for (String url : site.pageUrls()) {
+                String html = get(url);
+                if (html == null)
+                    errors++;
+                else
+                    assertTrue(html.contains("innerHTML"));
+            }
+            assertTrue("errors: " + errors, errors > 25 && errors < 75);
+            assertEquals(errors, site.getErrorsServed());
+        } finally {
+            site.stop();
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        long[] values = new long[100];
+        for (int i = 0; i < values.length; i++)
+            values[i] = 100 - i;
+        LoadTestReport.Percentiles percentiles = new LoadTestReport.Percentiles(values);
+        assertEquals(50, percentiles.getP50());
+        assertEquals(90, percentiles.getP90());
+        assertEquals(99, percentiles.getP99());
+        assertEquals(100, percentiles.getMax());
+        assertEquals(0, new LoadTestReport.Percentiles(new long[0]).getMax());
+        assertEquals(7, new LoadTestReport.Percentiles(new long[] {7}).getP99());
+    }
+
+}
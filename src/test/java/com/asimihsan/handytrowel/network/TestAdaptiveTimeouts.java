@@ -0,0 +1,83 @@
+/** ========================================================================
+  * handytrowel: src/test/java/network/TestAdaptiveTimeouts.java
+  * Tests for per-host adaptive fetch timeouts.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.network;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.asimihsan.handytrowel.network.AdaptiveTimeouts.AdaptiveTimeoutsBuilder;
+
+public class TestAdaptiveTimeouts {
+
+    @Test
+    public void testFallsBackUntilEnoughSamples() {
+        AdaptiveTimeouts timeouts = new AdaptiveTimeoutsBuilder().minSamples(10).build();
+        for (int i = 0; i < 9; i++)
+            timeouts.record("http://fast.example.com/" + i, 1000);
+        assertEquals(30000, timeouts.timeoutMillis("http://fast.example.com/next", 30000));
+        assertEquals(-1, timeouts.hedgeAfterMillis("http://fast.example.com/next"));
+        timeouts.record("http://fast.example.com/9", 1000);
+        assertEquals(5000, timeouts.timeoutMillis("http://fast.example.com/next", 30000));
+    }
+
+    @Test
+    public void testPercentileTimesFactorWithinBounds() {
+        AdaptiveTimeouts timeouts = new AdaptiveTimeoutsBuilder()
+        .factor(2).floorMillis(1000).ceilingMillis(20000).build();
+        for (int i = 1; i <= 100; i++)
+            timeouts.record("http://example.com/", i * 50);
+        assertEquals(9900, timeouts.timeoutMillis("http://EXAMPLE.com/other", 30000));
+        assertEquals(4500, timeouts.hedgeAfterMillis("http://example.com/"));
+
+        for (int i = 0; i < 20; i++)
+            timeouts.record("http://slow.example.org/", 60000);
+        assertEquals(20000, timeouts.timeoutMillis("http://slow.example.org/", 30000));
+        assertEquals(30000, timeouts.timeoutMillis("http://unknown.example.net/", 30000));
+    }
+
+    @Test
+    public void testTimeoutsRaiseTheTimeout() {
+        AdaptiveTimeouts timeouts = new AdaptiveTimeoutsBuilder().window(20).factor(1).floorMillis(0).build();
+        for (int i = 0; i < 20; i++)
+            timeouts.record("http://example.com/", 2000);
+        assertEquals(2000, timeouts.timeoutMillis("http://example.com/", 30000));
+        timeouts.recordTimeout("http://example.com/", 2000);
+        timeouts.recordTimeout("http://example.com/", 9000);
+        assertEquals(9000, timeouts.timeoutMillis("http://example.com/", 30000));
+    }
+
+    @Test
+    public void testForgetsLeastRecentHosts() {
+        AdaptiveTimeouts timeouts = new AdaptiveTimeoutsBuilder().maxHosts(2).build();
+        for (String host : new String[] {"a.example.com", "b.example.com", "c.example.com"}) {
+            for (int i = 0; i < 10; i++)
+                timeouts.record("http://" + host + "/", 1000);
+        }
+        assertTrue(timeouts.hostCount() <= 2);
+        assertEquals(30000, timeouts.timeoutMillis("http://a.example.com/", 30000));
+        assertEquals(5000, timeouts.timeoutMillis("http://c.example.com/", 30000));
+    }
+
+}
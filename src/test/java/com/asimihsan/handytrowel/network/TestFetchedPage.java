@@ -0,0 +1,109 @@
+/** ========================================================================
+  * handytrowel: src/test/java/network/TestFetchedPage.java
+  * Tests for charset detection and decoding of fetched pages.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.network;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+public class TestFetchedPage {
+
+    @Test
+    public void testDefaultsToUtf8() {
+        FetchedPage page = FetchedPage.fromBytes("http://example.com/",
+                           "<html><body>café</body></html>".getBytes(StandardCharsets.UTF_8));
+        assertEquals(StandardCharsets.UTF_8, page.getCharset());
+    }
+
+    @Test
+    public void testMetaCharset() {
+        byte[] content = "<html><head><meta charset=\"ISO-8859-1\"></head></html>"
+                         .getBytes(StandardCharsets.ISO_8859_1);
+        assertEquals(StandardCharsets.ISO_8859_1, FetchedPage.detectCharset(content));
+    }
+
+    @Test
+    public void testMetaHttpEquiv() {
+        byte[] content = ("<html><head><meta http-equiv=\"Content-Type\" " +
+                          "content=\"text/html; charset=windows-1252\"></head></html>")
+                         .getBytes(StandardCharsets.ISO_8859_1);
+        assertEquals(Charset.forName("windows-1252"), FetchedPage.detectCharset(content));
+    }
+
+    @Test
+    public void testUnknownCharsetFallsBack() {
+        byte[] content = "<meta charset=\"no-such-charset\">".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(StandardCharsets.UTF_8, FetchedPage.detectCharset(content));
+    }
+
+    @Test
+    public void testByteOrderMark() {
+        byte[] content = new byte[] {(byte) 0xFF, (byte) 0xFE, '<', 0};
+        assertEquals(StandardCharsets.UTF_16LE, FetchedPage.detectCharset(content));
+    }
+
+    @Test
+    public void testInputSourceDecodes() throws IOException {
+        String html = "<html><body>naïve café</body></html>";
+        FetchedPage page = new FetchedPage("http://example.com/",
+                                           html.getBytes(StandardCharsets.ISO_8859_1),
+                                           StandardCharsets.ISO_8859_1);
+        InputSource is = page.toInputSource();
+        assertEquals("ISO-8859-1", is.getEncoding());
+        try (Reader reader = new InputStreamReader(is.getByteStream(),
+                    Charset.forName(is.getEncoding()))) {
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = reader.read()) != -1)
+                sb.append((char) c);
+            assertEquals(html, sb.toString());
+        }
+    }
+
+    @Test
+    public void testUnderLimitNotTruncated() {
+        FetchedPage page = FetchedPage.fromString("http://example.com/", "<p>café</p>", 1024);
+        assertFalse(page.isTruncated());
+        assertEquals("<p>café</p>", new String(page.getContent(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testOverLimitTruncated() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            sb.append("<p>é</p>");
+        FetchedPage page = FetchedPage.fromString("http://example.com/", sb.toString(), 100);
+        assertTrue(page.isTruncated());
+        assertTrue(page.length() <= 100);
+        String decoded = new String(page.getContent(), StandardCharsets.UTF_8);
+        assertTrue(sb.toString().startsWith(decoded));
+    }
+}
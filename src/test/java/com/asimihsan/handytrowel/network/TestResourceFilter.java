@@ -0,0 +1,100 @@
+/** ========================================================================
+  * handytrowel: src/test/java/network/TestResourceFilter.java
+  * Tests for PhantomJS resource filtering across redirects.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.network;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.asimihsan.handytrowel.network.HTMLFetcher.HTMLFetcherBuilder;
+import com.asimihsan.handytrowel.network.ResourceFilter.ResourceFilterBuilder;
+
+/**
+ * Needs phantomjs on the path, like TestHTMLFetcher.
+ *
+ * "localhost" and "127.0.0.1" count as different sites, so a redirect
+ * from one to the other looks like a third-party "other" request, which
+ * the default filter blocks unless it is recognised as the page itself.
+ */
+public class TestResourceFilter {
+
+    private static final String ARTICLE = "The article text after the redirect.";
+
+    private static Server server;
+    private static int port;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        connector.setPort(0);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest,
+                               HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+                baseRequest.setHandled(true);
+                if (target.equals("/short")) {
+                    response.sendRedirect("http://127.0.0.1:" + port + "/article");
+                    return;
+                }
+                response.setContentType("text/html;charset=utf-8");
+                response.getOutputStream().write(("<html><body><p>" + ARTICLE + "</p></body></html>")
+                                                 .getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.start();
+        port = connector.getLocalPort();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testFollowsCrossSiteRedirect() throws Exception {
+        HTMLFetcher fetcher = new HTMLFetcherBuilder()
+        .resourceFilter(new ResourceFilterBuilder().defaults().build())
+        .build();
+        FetchedPage page = fetcher.fetch("http://localhost:" + port + "/short");
+        assertTrue(new String(page.getContent(), page.getCharset()).contains(ARTICLE));
+        assertEquals(0, page.getResourceStats().getBlocked());
+        assertTrue(page.getResourceStats().getAllowed() >= 2);
+    }
+
+}
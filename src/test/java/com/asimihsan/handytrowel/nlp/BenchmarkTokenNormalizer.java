@@ -0,0 +1,112 @@
+/** ========================================================================
+  * handytrowel: src/test/java/nlp/BenchmarkTokenNormalizer.java
+  * Compare single-pass token normalization with the regular expressions.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.nlp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import com.asimihsan.handytrowel.nlp.TokenNormalizer.TokenNormalizerBuilder;
+
+/**
+ * Time {@link TokenNormalizer} against the regular expression path it
+ * replaced, over a corpus of tokens shaped like tokenizer output.
+ *
+ * <pre>
+ * ./gradlew benchmark -PbenchmarkClass=com.asimihsan.handytrowel.nlp.BenchmarkTokenNormalizer
+ * </pre>
+ *
+ * @author Asim Ihsan
+ */
+public final class BenchmarkTokenNormalizer {
+
+    private static final Pattern PUNCTUATION = Pattern.compile("(?:[a-z]?[\\p{Punct}]+[a-z]?|-[lr].b-)");
+    private static final Pattern NUMBER = Pattern.compile("[0-9]+");
+
+    private BenchmarkTokenNormalizer() {
+    }
+
+    /**
+     * The original normalization: lower case, drop punctuation by regular
+     * expression, then fold numbers by regular expression.
+     */
+    static String regexNormalize(String token) {
+        String word = token.toLowerCase();
+        if (PUNCTUATION.matcher(word).matches())
+            return null;
+        return NUMBER.matcher(word).replaceAll("NUMBER");
+    }
+
+    /**
+     * Tokens in roughly the mix a tokenizer gives for news text: mostly
+     * lower case words, some capitalized, some punctuation and numbers.
+     */
+    static List<String> corpus(int size, long seed) {
+        String[] words = {"vaccine", "campaign", "Pakistan", "said", "W.H.O.", "health", "Monday",
+                          "outbreak", "the", "countries", "Syria", "virus", "travelers", "emergency"};
+        String[] punctuation = {".", ",", "''", "``", "'s", "n't", "-lrb-", "-rrb-", "--", ":", "?"};
+        String[] numbers = {"2014", "68", "300,000", "25-year", "10", "3-year-old", "A8"};
+        Random random = new Random(seed);
+        List<String> tokens = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int kind = random.nextInt(100);
+            if (kind < 75)
+                tokens.add(words[random.nextInt(words.length)]);
+            else if (kind < 93)
+                tokens.add(punctuation[random.nextInt(punctuation.length)]);
+            else
+                tokens.add(numbers[random.nextInt(numbers.length)]);
+        }
+        return tokens;
+    }
+
+    public static void main(String[] args) {
+        List<String> tokens = corpus(1000000, 42);
+        TokenNormalizer normalizer = new TokenNormalizerBuilder().build();
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            int kept = 0;
+            for (String token : tokens) {
+                if (regexNormalize(token) != null)
+                    kept++;
+            }
+            long regexNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int keptFast = 0;
+            for (String token : tokens) {
+                if (normalizer.normalize(token) != null)
+                    keptFast++;
+            }
+            long fastNanos = System.nanoTime() - start;
+
+            System.out.println(String.format(
+                "round %d: regex %.1f ns/token, single pass %.1f ns/token, %.1fx (kept %d / %d)",
+                round, (double) regexNanos / tokens.size(), (double) fastNanos / tokens.size(),
+                (double) regexNanos / fastNanos, kept, keptFast));
+        }
+    }
+
+}
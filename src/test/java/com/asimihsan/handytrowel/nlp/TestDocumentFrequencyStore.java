@@ -0,0 +1,109 @@
+/** ========================================================================
+  * handytrowel: src/test/java/nlp/TestDocumentFrequencyStore.java
+  * Tests for the corpus document frequency store and TF-IDF keywords.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.nlp;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asimihsan.handytrowel.nlp.DocumentFrequencyStore.DocumentFrequencyStoreBuilder;
+
+public class TestDocumentFrequencyStore {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCountsEachStemOncePerDocument() throws IOException {
+        DocumentFrequencyStore store = new DocumentFrequencyStoreBuilder().build();
+        store.addDocument(Arrays.asList("polio", "polio", "vaccin"));
+        store.addDocument(Arrays.asList("polio"));
+        assertEquals(2, store.getDocumentCount());
+        assertEquals(2, store.getDocumentFrequency("polio"));
+        assertEquals(1, store.getDocumentFrequency("vaccin"));
+        assertEquals(0, store.getDocumentFrequency("rain"));
+    }
+
+    @Test
+    public void testRareStemsRankFirst() throws IOException {
+        DocumentFrequencyStore store = new DocumentFrequencyStoreBuilder().build();
+        for (int i = 0; i < 10; i++)
+            store.addDocument(Arrays.asList("said", "year"));
+        List<String> doc = Arrays.asList("said", "said", "year", "polio", "vaccin", "vaccin");
+        store.addDocument(doc);
+        assertEquals(Arrays.asList("vaccin", "polio"), store.topKeywords(doc, 2));
+        assertTrue(store.topKeywords(doc, 0).isEmpty());
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        final DocumentFrequencyStore store = new DocumentFrequencyStoreBuilder().stripes(4).build();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1000; i++) {
+            final int n = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        store.addDocument(Arrays.asList("common", "stem" + (n % 10)));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(1000, store.getDocumentCount());
+        assertEquals(1000, store.getDocumentFrequency("common"));
+        assertEquals(100, store.getDocumentFrequency("stem3"));
+    }
+
+    @Test
+    public void testPersistsAcrossRuns() throws IOException {
+        File file = new File(folder.getRoot(), "df.gz");
+        DocumentFrequencyStore store = new DocumentFrequencyStoreBuilder().file(file).build();
+        store.addDocument(Arrays.asList("polio", "vaccin"));
+        store.close();
+
+        store = new DocumentFrequencyStoreBuilder().file(file).build();
+        store.addDocument(Arrays.asList("polio"));
+        store.close();
+
+        store = new DocumentFrequencyStoreBuilder().file(file).build();
+        assertEquals(2, store.getDocumentCount());
+        assertEquals(2, store.getDocumentFrequency("polio"));
+        assertEquals(1, store.getDocumentFrequency("vaccin"));
+    }
+}
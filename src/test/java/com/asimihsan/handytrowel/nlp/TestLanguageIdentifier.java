@@ -0,0 +1,114 @@
+/** ========================================================================
+  * handytrowel: src/test/java/nlp/TestLanguageIdentifier.java
+  * Tests for character trigram language identification.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.nlp;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestLanguageIdentifier {
+
+    private static LanguageIdentifier identifier;
+
+    @BeforeClass
+    public static void buildIdentifier() throws IOException {
+        identifier = new LanguageIdentifier();
+    }
+
+    @Test
+    public void testEnglish() {
+        assertEquals("en", identifier.identify(
+                         "Alarmed by the spread of polio to several fragile countries, the World " +
+                         "Health Organization declared a global health emergency on Monday."));
+    }
+
+    @Test
+    public void testFrench() {
+        assertEquals("fr", identifier.identify(
+                         "Le gouvernement a annonc\u00e9 mardi une s\u00e9rie de mesures pour lutter " +
+                         "contre la hausse des prix de l'\u00e9nergie, qui p\u00e8se sur le pouvoir " +
+                         "d'achat des m\u00e9nages depuis plusieurs mois."));
+    }
+
+    @Test
+    public void testGerman() {
+        assertEquals("de", identifier.identify(
+                         "Die Bundesregierung hat am Dienstag neue Ma\u00dfnahmen gegen die steigenden " +
+                         "Energiepreise angek\u00fcndigt, die seit Monaten die Kaufkraft der " +
+                         "Haushalte belasten."));
+    }
+
+    @Test
+    public void testSpanish() {
+        assertEquals("es", identifier.identify(
+                         "El gobierno anunci\u00f3 el martes una serie de medidas para combatir el " +
+                         "aumento de los precios de la energ\u00eda, que pesa sobre el poder " +
+                         "adquisitivo de los hogares desde hace varios meses."));
+    }
+
+    @Test
+    public void testDutch() {
+        assertEquals("nl", identifier.identify(
+                         "De regering heeft dinsdag een reeks maatregelen aangekondigd om de " +
+                         "stijging van de energieprijzen te bestrijden, die al maanden op de " +
+                         "koopkracht van huishoudens drukt."));
+    }
+
+    @Test
+    public void testGermanWordsLateInTheAlphabet() {
+        // Mostly words from the end of the alphabetical German list.
+        assertEquals("de", identifier.identify(
+                         "Wir wussten nicht, warum wir w\u00e4hrend des Winters zwischen zwei " +
+                         "Welten wechseln w\u00fcrden, wenn wir es wirklich wollten."));
+    }
+
+    @Test
+    public void testUnsupportedLatinLanguage() {
+        assertEquals(LanguageIdentifier.UNKNOWN, identifier.identify(
+                         "Rz\u0105d og\u0142osi\u0142 we wtorek pakiet dzia\u0142a\u0144 " +
+                         "maj\u0105cych przeciwdzia\u0142a\u0107 wzrostowi cen energii, kt\u00f3ry " +
+                         "od miesi\u0119cy obci\u0105\u017ca si\u0142\u0119 nabywcz\u0105 " +
+                         "gospodarstw domowych."));
+        assertEquals(LanguageIdentifier.UNKNOWN, identifier.identify(
+                         "Vlada je u utorak najavila niz mjera za suzbijanje rasta cijena " +
+                         "energije koji ve\u0107 mjesecima optere\u0107uje kupovnu mo\u0107 " +
+                         "ku\u0107anstava."));
+    }
+
+    @Test
+    public void testScript() {
+        assertEquals("ru", identifier.identify(
+                         "\u041f\u0440\u0430\u0432\u0438\u0442\u0435\u043b\u044c\u0441\u0442\u0432\u043e " +
+                         "\u043e\u0431\u044a\u044f\u0432\u0438\u043b\u043e"));
+    }
+
+    @Test
+    public void testTooShort() {
+        assertEquals(LanguageIdentifier.UNKNOWN, identifier.identify("OK"));
+        assertEquals(LanguageIdentifier.UNKNOWN, identifier.identify(""));
+    }
+}
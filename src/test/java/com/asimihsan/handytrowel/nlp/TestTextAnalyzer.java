@@ -0,0 +1,87 @@
+/** ========================================================================
+  * handytrowel: src/test/java/nlp/TestTextAnalyzer.java
+  * Tests for tokenizing, stopping and stemming article bodies.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.nlp;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.asimihsan.handytrowel.nlp.TextAnalyzer.TextAnalyzerBuilder;
+
+public class TestTextAnalyzer {
+
+    private static String longBody() {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; body.length() < 200 * 1000; i++)
+            body.append("Vaccination campaigns reached district ").append(i % 97).append(" villages. ");
+        return body.toString();
+    }
+
+    @Test
+    public void testStopsAtMaxTokens() {
+        TextAnalyzer analyzer = new TextAnalyzerBuilder().body(longBody()).maxTokens(10).build().analyze();
+        assertEquals(10, analyzer.getTokens().size());
+        assertTrue(analyzer.isTruncated());
+    }
+
+    @Test
+    public void testChunkingKeepsEveryToken() {
+        String body = longBody();
+        List<String> whole = new TextAnalyzerBuilder().body(body).build().analyze().getTokens();
+        TextAnalyzer chunked = new TextAnalyzerBuilder().body(body).maxTokens(1000 * 1000).build().analyze();
+        assertFalse(chunked.isTruncated());
+        assertEquals(whole, chunked.getTokens());
+    }
+
+    @Test
+    public void testEachLanguageKeepsItsStopwords() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // Built at once, in case this is the first use of either.
+            Future<List<String>> english = executor.submit(analyze("the und", Languages.ENGLISH));
+            Future<List<String>> german = executor.submit(analyze("the und", "de"));
+            assertEquals(Arrays.asList("und"), english.get());
+            assertEquals(Arrays.asList("the"), german.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Callable<List<String>> analyze(final String body, final String language) {
+        return new Callable<List<String>>() {
+            @Override
+            public List<String> call() {
+                return new TextAnalyzerBuilder().body(body).language(language).build().analyze().getTokens();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,88 @@
+/** ========================================================================
+  * handytrowel: src/test/java/nlp/TestTokenNormalizer.java
+  * Tests for single-pass token normalization.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.nlp;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.asimihsan.handytrowel.nlp.TokenNormalizer.TokenNormalizerBuilder;
+
+public class TestTokenNormalizer {
+
+    private final TokenNormalizer normalizer = new TokenNormalizerBuilder().build();
+
+    @Test
+    public void testMatchesRegexPath() {
+        String[] tokens = {"polio", "Polio", "W.H.O.", ".", "''", "'s", "n't", "-LRB-", "-rrb-", "-lsb-",
+                           "--", "a", "I", "2014", "300,000", "25-year", "3-year-old", "A8", "e-mail",
+                           "U.S.", "$", "5$", "a.", ".a", "ab.", "\u00c9cole", "\u039f\u0394\u039f\u03a3",
+                           "stra\u00dfe", "\u0130stanbul", "caf\u00e9", ""};
+        for (String token : tokens)
+            assertEquals(token, BenchmarkTokenNormalizer.regexNormalize(token), normalizer.normalize(token));
+        for (String token : BenchmarkTokenNormalizer.corpus(10000, 7))
+            assertEquals(token, BenchmarkTokenNormalizer.regexNormalize(token), normalizer.normalize(token));
+
+        Random random = new Random(11);
+        String alphabet = "aAbBlLrRzZ09.-',$_~ \u00e9";
+        for (int i = 0; i < 100000; i++) {
+            char[] token = new char[1 + random.nextInt(6)];
+            for (int j = 0; j < token.length; j++)
+                token[j] = alphabet.charAt(random.nextInt(alphabet.length()));
+            String s = new String(token);
+            assertEquals(s, BenchmarkTokenNormalizer.regexNormalize(s), normalizer.normalize(s));
+        }
+    }
+
+    @Test
+    public void testUnchangedTokensAreNotCopied() {
+        String token = new String("vaccine");
+        assertSame(token, normalizer.normalize(token));
+        String accented = new String("caf\u00e9");
+        assertSame(accented, normalizer.normalize(accented));
+    }
+
+    @Test
+    public void testStepsCanBeSwitchedOff() {
+        TokenNormalizer keepCase = new TokenNormalizerBuilder().foldCase(false).build();
+        assertEquals("Pakistan", keepCase.normalize("Pakistan"));
+        assertEquals("NUMBER-Year", keepCase.normalize("25-Year"));
+        assertNull(keepCase.normalize("'S"));
+
+        TokenNormalizer keepNumbers = new TokenNormalizerBuilder().foldNumbers(false).build();
+        assertEquals("a8", keepNumbers.normalize("A8"));
+
+        TokenNormalizer keepPunctuation = new TokenNormalizerBuilder().dropPunctuation(false).build();
+        assertEquals("n't", keepPunctuation.normalize("n't"));
+        assertEquals("NUMBER,NUMBER", keepPunctuation.normalize("300,000"));
+
+        TokenNormalizer none = new TokenNormalizerBuilder()
+        .dropPunctuation(false).foldNumbers(false).foldCase(false).build();
+        String token = "W.H.O. 2014";
+        assertSame(token, none.normalize(token));
+    }
+
+}
@@ -0,0 +1,110 @@
+/** ========================================================================
+  * handytrowel: src/test/java/pipeline/TestArticlePipeline.java
+  * Tests for the article pipeline's size limits.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.pipeline;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.asimihsan.handytrowel.network.FetchedPage;
+import com.asimihsan.handytrowel.pipeline.ArticlePipeline.ArticlePipelineBuilder;
+
+public class TestArticlePipeline {
+
+    private static final String URL = "http://example.com/article";
+
+    private static FetchedPage page() {
+        StringBuilder html = new StringBuilder("<html><head><title>Campaign</title></head><body>");
+        html.append("<div><a href=\"http://example.com/nav\">Home</a></div>");
+        for (int i = 0; i < 5; i++) {
+            html.append("<p>The health organization said on Monday that the campaign would continue ")
+            .append("through the summer, and that vaccination teams reached villages that had been ")
+            .append("cut off for most of the year by flooding and conflict.</p>");
+        }
+        html.append("</body></html>");
+        return FetchedPage.fromString(URL, html.toString());
+    }
+
+    private static ArticleRecord process(ArticlePipelineBuilder builder) throws Exception {
+        return builder.keywords(0).build().process(page());
+    }
+
+    @Test
+    public void testUnlimited() throws Exception {
+        ArticleRecord record = process(new ArticlePipelineBuilder());
+        assertTrue(record.getTruncated().isEmpty());
+        assertNull(record.getAborted());
+        assertTrue(record.getExtractedBody().contains("flooding and conflict"));
+        assertFalse(record.getTokens().isEmpty());
+    }
+
+    @Test
+    public void testBodyCapTruncates() throws Exception {
+        String body = process(new ArticlePipelineBuilder()).getExtractedBody();
+        ArticleRecord record = process(new ArticlePipelineBuilder().maxBodyChars(body.length() / 2));
+        assertEquals(Arrays.asList(ArticlePipeline.LIMIT_BODY_CHARS), record.getTruncated());
+        assertNull(record.getAborted());
+        assertEquals(body.substring(0, body.length() / 2), record.getExtractedBody());
+        assertFalse(record.getTokens().isEmpty());
+    }
+
+    @Test
+    public void testBodyFillingCapIsNotTruncated() throws Exception {
+        // Only the last block's separator doesn't fit, so no text is lost.
+        String body = process(new ArticlePipelineBuilder()).getExtractedBody();
+        assertTrue(body.endsWith("\n"));
+        ArticleRecord record = process(new ArticlePipelineBuilder().maxBodyChars(body.length() - 1));
+        assertTrue(record.getTruncated().isEmpty());
+        assertEquals(body.substring(0, body.length() - 1), record.getExtractedBody());
+    }
+
+    @Test
+    public void testTokenCapTruncates() throws Exception {
+        ArticleRecord record = process(new ArticlePipelineBuilder().maxTokens(5));
+        assertEquals(Arrays.asList(ArticlePipeline.LIMIT_TOKENS), record.getTruncated());
+        assertNull(record.getAborted());
+        assertEquals(5, record.getTokens().size());
+        assertNotNull(record.getExtractedBody());
+    }
+
+    @Test
+    public void testAbortOversizedBody() throws Exception {
+        ArticleRecord record = process(new ArticlePipelineBuilder().maxBodyChars(100).abortOversized(true));
+        assertEquals(ArticlePipeline.LIMIT_BODY_CHARS, record.getAborted());
+        assertEquals(Arrays.asList(ArticlePipeline.LIMIT_BODY_CHARS), record.getTruncated());
+        assertNull(record.getExtractedBody());
+        assertNull(record.getTokens());
+    }
+
+    @Test
+    public void testAbortOversizedTokens() throws Exception {
+        ArticleRecord record = process(new ArticlePipelineBuilder().maxTokens(5).abortOversized(true));
+        assertEquals(ArticlePipeline.LIMIT_TOKENS, record.getAborted());
+        assertNull(record.getExtractedBody());
+        assertNull(record.getTokens());
+    }
+
+}
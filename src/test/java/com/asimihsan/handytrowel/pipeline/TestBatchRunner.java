@@ -0,0 +1,157 @@
+/** ========================================================================
+  * handytrowel: src/test/java/pipeline/TestBatchRunner.java
+  * Tests for running batches of URLs.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.pipeline;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asimihsan.handytrowel.index.ArticleSearcher;
+import com.asimihsan.handytrowel.index.LuceneIndexSink.LuceneIndexSinkBuilder;
+import com.asimihsan.handytrowel.index.SearchHit;
+import com.asimihsan.handytrowel.pipeline.BatchRunner.BatchRunnerBuilder;
+import com.asimihsan.handytrowel.pipeline.RunJournal.RunJournalBuilder;
+import com.google.common.base.Predicate;
+
+public class TestBatchRunner {
+
+    /**
+     * How many URLs the killed run writes before it dies, and the exit
+     * status it dies with.
+     */
+    private static final int WRITTEN_BEFORE_KILL = 12;
+    private static final int KILLED = 37;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> urls(int count) {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            urls.add("http://example.com/" + i);
+        return urls;
+    }
+
+    private static ArticleRecord record(String url) {
+        ArticleRecord record = new ArticleRecord(url);
+        record.setExtractedBody("Polio vaccination at " + url);
+        record.setTokens(Arrays.asList("polio", "vaccin"));
+        return record;
+    }
+
+    private static BatchRunner indexingRunner(File index, RunJournal journal) throws IOException {
+        return new BatchRunnerBuilder()
+        .journal(journal)
+        .sink(new LuceneIndexSinkBuilder().directory(index).commitEvery(1000 * 1000).build())
+        .checkpointEvery(5)
+        .build();
+    }
+
+    private static Set<String> indexedUrls(File index) throws IOException {
+        Set<String> urls = new HashSet<>();
+        try (ArticleSearcher searcher = new ArticleSearcher(index)) {
+            for (SearchHit hit : searcher.search("polio", 1000))
+                urls.add(hit.getUrl());
+        }
+        return urls;
+    }
+
+    /**
+     * A run killed part way through never journals a URL the index lost,
+     * so resuming it leaves every URL in the index.
+     */
+    @Test
+    public void testKilledRunResumesIntoIndex() throws Exception {
+        File index = folder.newFolder("index");
+        File journalFile = new File(folder.getRoot(), "journal");
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                                             TestBatchRunner.class.getName(),
+                                             index.getPath(), journalFile.getPath())
+        .inheritIO().start();
+        assertEquals(KILLED, process.waitFor());
+
+        List<String> urls = urls(20);
+        RunJournal journal = new RunJournalBuilder().file(journalFile).build();
+        List<String> journaled = new ArrayList<>();
+        for (String url : urls) {
+            if (!journal.shouldProcess(url))
+                journaled.add(url);
+        }
+        // Two checkpoints' worth; the last two URLs were never checkpointed.
+        assertEquals(10, journaled.size());
+        assertTrue(indexedUrls(index).containsAll(journaled));
+
+        BatchRunner runner = indexingRunner(index, journal);
+        for (String url : urls) {
+            if (runner.shouldProcess(url))
+                runner.write(url, record(url));
+        }
+        runner.close();
+        journal.close();
+        assertEquals(new HashSet<>(urls), indexedUrls(index));
+    }
+
+    /**
+     * The killed run for testKilledRunResumesIntoIndex: index some URLs,
+     * journaling each record as soon as it is appended, then die without
+     * closing anything.
+     */
+    public static void main(String[] args) throws Exception {
+        RunJournal journal = new RunJournalBuilder().file(new File(args[1])).syncEvery(1).build();
+        BatchRunner runner = indexingRunner(new File(args[0]), journal);
+        for (String url : urls(WRITTEN_BEFORE_KILL))
+            runner.write(url, record(url));
+        Runtime.getRuntime().halt(KILLED);
+    }
+
+    @Test
+    public void testStopsWhenToldNotToProceed() throws IOException, InterruptedException {
+        // No pipeline: a URL actually processed would count as a failure.
+        BatchRunner runner = new BatchRunnerBuilder().build();
+        final List<String> asked = new ArrayList<>();
+        runner.run(Arrays.asList("http://example.com/a", "http://example.com/b"), new Predicate<String>() {
+            @Override
+            public boolean apply(String url) {
+                synchronized (asked) {
+                    asked.add(url);
+                }
+                return false;
+            }
+        });
+        assertEquals(2, asked.size());
+        assertEquals(0, runner.getFailures());
+    }
+
+}
@@ -0,0 +1,146 @@
+/** ========================================================================
+  * handytrowel: src/test/java/pipeline/TestMemoryBudget.java
+  * Tests for memory-budget admission control.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.pipeline;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import com.asimihsan.handytrowel.network.FetchedPage;
+import com.asimihsan.handytrowel.pipeline.ArticlePipeline.ArticlePipelineBuilder;
+import com.asimihsan.handytrowel.pipeline.MemoryBudget.MemoryBudgetBuilder;
+import com.asimihsan.handytrowel.pipeline.MemoryBudget.Reservation;
+
+public class TestMemoryBudget {
+
+    private static Thread admitInBackground(final MemoryBudget budget, final CountDownLatch admitted) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    budget.admit().close();
+                    admitted.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void testAdmitsOnlyWithinBudget() throws InterruptedException {
+        MemoryBudget budget = new MemoryBudgetBuilder().budgetBytes(1000).admissionBytes(400).build();
+        Reservation first = budget.admit();
+        Reservation second = budget.admit();
+        assertEquals(800, budget.getUsedBytes());
+        assertEquals(2, budget.getInFlight());
+
+        CountDownLatch admitted = new CountDownLatch(1);
+        Thread third = admitInBackground(budget, admitted);
+        assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+        first.close();
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        third.join();
+
+        second.close();
+        second.close();
+        assertEquals(0, budget.getUsedBytes());
+        assertEquals(0, budget.getInFlight());
+        assertEquals(3, budget.getAdmitted());
+        assertEquals(1, budget.getWaits());
+        assertEquals(800, budget.getPeakBytes());
+    }
+
+    @Test
+    public void testGrowthNeverBlocksButHoldsBackAdmission() throws InterruptedException {
+        MemoryBudget budget = new MemoryBudgetBuilder().budgetBytes(1000).admissionBytes(100).build();
+        Reservation large = budget.admit();
+        large.resize(5000);
+        assertEquals(5000, budget.getUsedBytes());
+
+        CountDownLatch admitted = new CountDownLatch(1);
+        Thread next = admitInBackground(budget, admitted);
+        assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+        large.resize(500);
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        next.join();
+        large.close();
+        assertEquals(5000, budget.getPeakBytes());
+    }
+
+    @Test
+    public void testAdmitsOversizedDocumentAlone() throws InterruptedException {
+        MemoryBudget budget = new MemoryBudgetBuilder().budgetBytes(1000).admissionBytes(100).build();
+        Reservation huge = budget.admit();
+        huge.resize(1000000);
+        huge.close();
+        // The next admission expects a large document, but is capped at the
+        // whole budget and nothing is in flight, so it must not wait.
+        Reservation next = budget.admit();
+        assertTrue(next.getBytes() > 100);
+        assertTrue(next.getBytes() <= 1000);
+        next.close();
+        assertEquals(0, budget.getWaits());
+    }
+
+    @Test
+    public void testPipelineChargesEachStage() throws Exception {
+        MemoryBudget budget = new MemoryBudgetBuilder().budgetBytes(1 << 30).build();
+        StringBuilder html = new StringBuilder("<html><body><article>");
+        for (int i = 0; i < 50; i++)
+            html.append("<p>The quick brown fox jumps over the lazy dog, again and again and again.</p>");
+        html.append("</article></body></html>");
+        ArticlePipeline pipeline = new ArticlePipelineBuilder().build();
+        ArticleRecord record;
+        try (Reservation reservation = budget.admit()) {
+            record = pipeline.process(FetchedPage.fromString("http://example.com/", html.toString()), reservation);
+            assertEquals(Footprint.record(record), reservation.getBytes());
+            assertEquals(Footprint.record(record), budget.getUsedBytes());
+        }
+        assertFalse(record.getTokens().isEmpty());
+        assertTrue(budget.getPeakBytes() >= Footprint.analyzing(record.getExtractedBody().length()));
+        assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    public void testExposedOverJmx() throws Exception {
+        MemoryBudget budget = new MemoryBudgetBuilder().budgetBytes(1000).admissionBytes(300).build();
+        budget.register();
+        try (Reservation reservation = budget.admit()) {
+            Object used = ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(new ObjectName(MemoryBudget.OBJECT_NAME), "UsedBytes");
+            assertEquals(300L, used);
+            assertEquals(300L, reservation.getBytes());
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+/** ========================================================================
+  * handytrowel: src/test/java/pipeline/TestRunJournal.java
+  * Tests for the resumable batch run journal.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.pipeline;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asimihsan.handytrowel.pipeline.RunJournal.Outcome;
+import com.asimihsan.handytrowel.pipeline.RunJournal.RunJournalBuilder;
+
+public class TestRunJournal {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testResumesAcrossRestarts() throws IOException {
+        File file = new File(folder.getRoot(), "run.journal");
+        RunJournal journal = new RunJournalBuilder().file(file).maxAttempts(2).build();
+        assertTrue(journal.shouldProcess("http://example.com/ok"));
+        journal.record("http://example.com/ok", Outcome.SUCCESS, "body");
+        journal.record("http://example.com/slow", Outcome.TIMEOUT, null);
+        journal.record("http://example.com/broken", Outcome.ERROR, null);
+        journal.record("http://example.com/broken", Outcome.ERROR, null);
+        journal.record("http://example.com/flaky", Outcome.ERROR, null);
+        journal.record("http://example.com/flaky", Outcome.SUCCESS, "flaky body");
+        journal.close();
+
+        journal = new RunJournalBuilder().file(file).maxAttempts(2).build();
+        assertEquals(4, journal.size());
+        assertFalse(journal.shouldProcess("http://example.com/ok"));
+        assertFalse(journal.shouldProcess("http://example.com/flaky"));
+        assertTrue(journal.shouldProcess("http://example.com/slow"));
+        assertFalse(journal.shouldProcess("http://example.com/broken"));
+        assertTrue(journal.shouldProcess("http://example.com/new"));
+        assertNotEquals(0, journal.getContentHash("http://example.com/ok"));
+        assertNotEquals(journal.getContentHash("http://example.com/ok"),
+                        journal.getContentHash("http://example.com/flaky"));
+        assertEquals(0, journal.getContentHash("http://example.com/slow"));
+        journal.close();
+
+        journal = new RunJournalBuilder().file(file).maxAttempts(5).build();
+        assertTrue(journal.shouldProcess("http://example.com/broken"));
+        journal.close();
+    }
+
+    @Test
+    public void testDropsTornRecord() throws IOException {
+        File file = new File(folder.getRoot(), "run.journal");
+        RunJournal journal = new RunJournalBuilder().file(file).syncEvery(1).build();
+        journal.record("http://example.com/a", Outcome.SUCCESS, "a");
+        journal.record("http://example.com/b", Outcome.SUCCESS, "b");
+        journal.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+
+        journal = new RunJournalBuilder().file(file).build();
+        assertFalse(journal.shouldProcess("http://example.com/a"));
+        assertTrue(journal.shouldProcess("http://example.com/b"));
+        journal.record("http://example.com/b", Outcome.SUCCESS, "b");
+        journal.close();
+        assertFalse(new RunJournalBuilder().file(file).build().shouldProcess("http://example.com/b"));
+    }
+
+    @Test
+    public void testSyncsIdleRecords() throws IOException, InterruptedException {
+        File file = new File(folder.getRoot(), "run.journal");
+        RunJournal journal = new RunJournalBuilder().file(file).syncEvery(1000).syncMillis(20).build();
+        long empty = file.length();
+        journal.record("http://example.com/a", Outcome.SUCCESS, "a");
+        // Nothing else is recorded, so only the background sync can write it.
+        for (int i = 0; i < 250 && file.length() == empty; i++)
+            Thread.sleep(20);
+        assertEquals(empty + 17, file.length());
+        journal.close();
+    }
+
+    @Test
+    public void testReplaysManyEntries() throws IOException {
+        File file = new File(folder.getRoot(), "run.journal");
+        RunJournal journal = new RunJournalBuilder().file(file).build();
+        for (int i = 0; i < 200000; i++)
+            journal.record("http://example.com/" + i, i % 10 == 0 ? Outcome.ERROR : Outcome.SUCCESS, null);
+        journal.close();
+
+        journal = new RunJournalBuilder().file(file).maxAttempts(1).build();
+        assertEquals(200000, journal.size());
+        for (int i = 0; i < 200000; i += 997)
+            assertFalse(journal.shouldProcess("http://example.com/" + i));
+        journal.close();
+    }
+
+}
@@ -0,0 +1,151 @@
+/** ========================================================================
+  * handytrowel: src/test/java/queue/TestWorkQueue.java
+  * Tests for the directory-based work queue, including several JVMs.
+  * ========================================================================
+  * Copyright (c) 2014, Asim Ihsan, All rights reserved.
+  * <http://www.asimihsan.com>
+  * https://github.com/asimihsan/handytrowel/blob/master/LICENSE
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * it under the terms of the GNU Affero General Public License as published
+  * by the Free Software Foundation, either version 3 of the License, or
+  * (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+  * ========================================================================
+  */
+
+package com.asimihsan.handytrowel.queue;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.asimihsan.handytrowel.queue.WorkQueue.WorkQueueBuilder;
+
+public class TestWorkQueue {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> urls(int count) {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            urls.add("http://example.com/" + i);
+        return urls;
+    }
+
+    private WorkQueue queue(String workerId, long leaseMillis) throws IOException {
+        return new WorkQueueBuilder().directory(folder.getRoot()).workerId(workerId).leaseMillis(leaseMillis).build();
+    }
+
+    @Test
+    public void testEachShardClaimedOnce() throws IOException {
+        WorkQueue a = queue("a", 60000);
+        WorkQueue b = queue("b", 60000);
+        assertEquals(4, a.submit(urls(35), 10));
+        Set<String> seen = new HashSet<>();
+        WorkQueue.Shard shard = null;
+        int turn = 0;
+        WorkQueue worker = a;
+        while ((shard = worker.claim()) != null) {
+            for (String url : shard.getUrls())
+                assertTrue(seen.add(url));
+            assertFalse(a.isDrained());
+            assertTrue(worker.complete(shard));
+            worker = (++turn % 2 == 0) ? a : b;
+        }
+        assertEquals(35, seen.size());
+        assertTrue(b.isDrained());
+        a.close();
+        b.close();
+    }
+
+    @Test
+    public void testExpiredLeaseIsReclaimed() throws Exception {
+        WorkQueue dead = queue("dead", 1000);
+        WorkQueue alive = queue("alive", 1000);
+        dead.submit(urls(5), 10);
+        WorkQueue.Shard abandoned = dead.claim();
+        dead.close();
+        assertNull(alive.claim());
+
+        Path claimed = folder.getRoot().toPath().resolve("claimed");
+        for (File file : claimed.toFile().listFiles())
+            Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(System.currentTimeMillis() - 5000));
+        WorkQueue.Shard reclaimed = alive.claim();
+        assertNotNull(reclaimed);
+        assertEquals(abandoned.getName(), reclaimed.getName());
+        assertEquals(urls(5), reclaimed.getUrls());
+        assertFalse(dead.complete(abandoned));
+        assertTrue(alive.complete(reclaimed));
+        assertTrue(alive.isDrained());
+        alive.close();
+    }
+
+    /**
+     * Several JVMs drain one queue; every URL comes out exactly once.
+     */
+    @Test
+    public void testSeveralProcesses() throws Exception {
+        File queueDirectory = folder.newFolder("queue");
+        new WorkQueueBuilder().directory(queueDirectory).build().submit(urls(500), 7);
+
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        List<Process> processes = new ArrayList<>();
+        List<File> outputs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            File output = new File(folder.getRoot(), "worker-" + i + ".txt");
+            outputs.add(output);
+            processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                                             TestWorkQueue.class.getName(),
+                                             queueDirectory.getPath(), "worker-" + i, output.getPath())
+                          .inheritIO().start());
+        }
+        for (Process process : processes)
+            assertEquals(0, process.waitFor());
+
+        List<String> processed = new ArrayList<>();
+        for (File output : outputs)
+            processed.addAll(Files.readAllLines(output.toPath(), StandardCharsets.UTF_8));
+        assertEquals(500, processed.size());
+        assertEquals(new HashSet<>(urls(500)), new HashSet<>(processed));
+    }
+
+    /**
+     * A worker process for testSeveralProcesses: drain the queue, writing
+     * every URL processed to the output file.
+     */
+    public static void main(String[] args) throws Exception {
+        WorkQueue queue = new WorkQueueBuilder().directory(new File(args[0])).workerId(args[1]).build();
+        List<String> processed = new ArrayList<>();
+        WorkQueue.Shard shard = null;
+        while ((shard = queue.claim()) != null) {
+            processed.addAll(shard.getUrls());
+            Thread.sleep(2);
+            queue.complete(shard);
+        }
+        queue.close();
+        Files.write(new File(args[2]).toPath(), processed, StandardCharsets.UTF_8);
+    }
+
+}